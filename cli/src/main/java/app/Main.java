@@ -11,8 +11,10 @@ import app.output.Graphviz;
 import app.output.IndentedPlainText;
 import app.output.OutputFormatVisitor;
 import app.output.Xml;
+import bullwinkle.BnfParser;
 import bullwinkle.error.InvalidRule;
 import bullwinkle.error.ParsingFailed;
+import bullwinkle.nodes.Node;
 import jcli.CliHelp;
 import jcli.annotations.CliCommand;
 import jcli.annotations.CliOption;
@@ -46,6 +48,11 @@ public enum Main {;
 
 		@CliOption(longName = "set-partial", description = "If set will enable partial parsing")
 		private boolean setPartial;
+
+		@CliOption(name = 'p', longName = "parser", description = "A parser file to use instead of a grammar")
+		private String parserFile;
+		@CliOption(longName = "save-parser", description = "Writes the parser built from the grammar to file x")
+		private String saveParser;
 	}
 
 	public static void main(final String... args) {
@@ -75,27 +82,25 @@ public enum Main {;
 
 			if (arguments.logLevel > 0)
 				stderr.println("Bullwinkle " + Main.class.getPackage().getImplementationVersion() + ", an LL(k) parser");
-			if (isNullOrEmpty(arguments.grammar)) {
+			if (isNullOrEmpty(arguments.grammar) && isNullOrEmpty(arguments.parserFile)) {
 				stderr.println("[ERROR] no grammar file specified");
 				return ERROR_ARGUMENTS;
 			}
 
-			final var grammarPath = Paths.get(arguments.grammar);
-			if (!exists(grammarPath)) throw new FileNotFoundException(arguments.grammar);
-
-			try (final var grammarInput = new FileInputStream(grammarPath.toFile())) {
-				final var outputGenerator = findOutputFormat(arguments.format);
+			final var outputGenerator = findOutputFormat(arguments.format);
+			final var parser = isNullOrEmpty(arguments.parserFile)
+				? buildParser(arguments.grammar, arguments.setPartial)
+				: loadParser(arguments.parserFile);
+			if (!isNullOrEmpty(arguments.saveParser)) parser.save(Path.of(arguments.saveParser));
 
-				newBnfParser()
-					.addGrammar(grammarInput)
-					.partialParsing(arguments.setPartial)
-					.build().parse(readDataToParse(arguments.inputFile, stdin))
-					.postfixAccept(outputGenerator);
+			final var tree = arguments.inputFile != null
+				? parser.parse(Path.of(arguments.inputFile))
+				: parseStream(parser, stdin);
+			tree.postfixAccept(outputGenerator);
 
-				stdout.print(outputGenerator.toOutputString());
+			stdout.print(outputGenerator.toOutputString());
 
-				return 0;
-			}
+			return 0;
 		} catch (Exception e) {
 			stderr.println("[ERROR]: " + e.getMessage());
 			if (e instanceof HasCliExitCode) {
@@ -117,6 +122,24 @@ public enum Main {;
 		}
 	}
 
+	private static BnfParser buildParser(final String grammar, final boolean partialParsing) throws IOException {
+		final var grammarPath = Paths.get(grammar);
+		if (!exists(grammarPath)) throw new FileNotFoundException(grammar);
+
+		try (final var grammarInput = new FileInputStream(grammarPath.toFile())) {
+			return newBnfParser()
+				.addGrammar(grammarInput)
+				.partialParsing(partialParsing)
+				.build();
+		}
+	}
+
+	private static BnfParser loadParser(final String parserFile) throws IOException {
+		final var parserPath = Paths.get(parserFile);
+		if (!exists(parserPath)) throw new FileNotFoundException(parserFile);
+		return BnfParser.load(parserPath);
+	}
+
 	private static OutputFormatVisitor findOutputFormat(final String selectedFormat) throws UnknownOutputFormat {
 		if (selectedFormat.equalsIgnoreCase("xml")) return new Xml();
 		if (selectedFormat.equalsIgnoreCase("dot")) return new Graphviz();
@@ -124,9 +147,9 @@ public enum Main {;
 		throw new UnknownOutputFormat(selectedFormat);
 	}
 
-	private static String readDataToParse(final String inputFileName, final InputStream inputStream) throws IOException {
-		try (final var in = inputFileName != null ? new FileInputStream(inputFileName) : inputStream) {
-			return new String(in.readAllBytes(), UTF_8);
+	private static Node parseStream(final BnfParser parser, final InputStream inputStream) throws IOException {
+		try (final var reader = new BufferedReader(new InputStreamReader(inputStream, UTF_8))) {
+			return parser.parse(reader);
 		}
 	}
 
@@ -161,9 +161,8 @@ public abstract class ParseTreeObjectBuilder<T> implements ParseNodeVisitor {
 				return;
 			}
 			List<Object> argument_list = new LinkedList<>();
-			List<Node> children = node.getChildren();
-			for (int i = children.size() - 1; i >= 0; i--) {
-				Node child = children.get(i);
+			for (int i = node.childCount() - 1; i >= 0; i--) {
+				Node child = node.child(i);
 				Object o = stack.pop();
 				if (!ma.clean || child.getToken().startsWith("<")) {
 					argument_list.add(0, o);
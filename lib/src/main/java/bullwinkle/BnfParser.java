@@ -1,47 +1,154 @@
 package bullwinkle;
 
-import java.util.Iterator;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import java.util.logging.Logger;
 
-import bullwinkle.error.*;
-import bullwinkle.nodes.CaptureBlockNode;
+import bullwinkle.analysis.GrammarAnalysis;
+import bullwinkle.engine.BacktrackingParser;
+import bullwinkle.engine.ParseEngine;
+import bullwinkle.error.ParsingFailed;
+import bullwinkle.error.VisitException;
+import bullwinkle.lexer.Lexer;
+import bullwinkle.nodes.CompactTree;
 import bullwinkle.nodes.Node;
 import bullwinkle.tokens.*;
-import bullwinkle.util.MutableString;
+import bullwinkle.util.ByteBufferInput;
+import bullwinkle.util.ParseInput;
+import bullwinkle.util.StreamingInput;
 
-import static bullwinkle.util.Functions.indent;
-import static bullwinkle.util.Functions.orThrow;
-import static java.util.logging.Level.*;
+import static bullwinkle.util.LoggingParseTracer.forLogger;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
 import static java.util.stream.Collectors.joining;
 
 /**
- * A parser reads a string according to a BNF grammar and produces a parse tree
+ * A parser reads a string according to a BNF grammar and produces a parse tree.
+ * <p>
+ * A parser made by {@link BnfParserBuilder#build()} is immutable and
+ * thread-safe: its rules are frozen, and every call to <tt>parse</tt> keeps
+ * its state, like the memo table, to itself. One instance can serve any
+ * number of threads at once.
  */
 public final class BnfParser {
 
+	// The smallest number of characters parsed as a chunk by parseChunked
+	private static final int MIN_CHUNK_SIZE = 1 << 14;
+
 	private final List<BnfRule> rules;
+	private final Map<String, BnfRule> rulesByName;
 	private final BnfRule startRule;
 
-	private final Logger logger;
-	private final int maxRecursionSteps;
-	private final boolean partialParsing;
+	private final GrammarAnalysis analysis;
+	private final BacktrackingParser backtracking;
+	// The engine used instead of backtracking, if any
+	private final ParseEngine engine;
+	// Splits the input into lexemes before parsing, if any
+	private final Lexer lexer;
 
 	/**
 	 * Creates a new parser by copying the rules from another parser
 	 */
 	public BnfParser(final BnfParser parser) {
-		this(parser.rules, parser.startRule, parser.logger, parser.maxRecursionSteps,
-			parser.partialParsing);
+		this(parser, parser.engine);
+	}
+
+	/**
+	 * Creates a new parser for the grammar of another parser, that uses a
+	 * different engine
+	 * @param engine The engine, or <tt>null</tt> to parse by backtracking
+	 */
+	public BnfParser(final BnfParser parser, final ParseEngine engine) {
+		this(parser, engine, parser.lexer);
+	}
+
+	/**
+	 * Creates a new parser for the grammar of another parser, that uses a
+	 * different engine and lexer
+	 * @param engine The engine, or <tt>null</tt> to parse by backtracking
+	 * @param lexer The lexer, or <tt>null</tt> to parse the characters of the input
+	 */
+	public BnfParser(final BnfParser parser, final ParseEngine engine, final Lexer lexer) {
+		this.rules = parser.rules;
+		this.rulesByName = parser.rulesByName;
+		this.startRule = parser.startRule;
+		this.analysis = parser.analysis;
+		this.backtracking = parser.backtracking;
+		this.engine = engine;
+		this.lexer = lexer;
 	}
 
 	public BnfParser(final List<BnfRule> rules, final BnfRule startRule, final Logger logger,
 					 final int maxRecursionSteps, final boolean partialParsing) {
-		this.rules = rules;
+		this(rules, startRule, forLogger(logger), maxRecursionSteps, partialParsing, 0, null);
+	}
+
+	/**
+	 * Creates a parser for some rules, and freezes them: like those of a
+	 * parser made by {@link BnfParserBuilder#build()}, they can't change
+	 * anymore, and the parser can be shared by any number of threads.
+	 * @param tracer Receives the parsing steps, use {@link ParseTracer#NONE} to turn tracing off
+	 * @param memoTableSize The maximum number of (rule, offset) outcomes remembered
+	 *   during a single parse. Use 0 to disable memoization.
+	 * @param analysis The FIRST sets of the grammar, used to skip alternatives that can't
+	 *   match the next character. Use <tt>null</tt> to try every alternative.
+	 */
+	public BnfParser(final List<BnfRule> rules, final BnfRule startRule, final ParseTracer tracer,
+					 final int maxRecursionSteps, final boolean partialParsing, final int memoTableSize,
+					 final GrammarAnalysis analysis) {
+		this(rules, startRule, tracer, maxRecursionSteps, partialParsing, memoTableSize, analysis, null);
+	}
+
+	/**
+	 * @param pool Tries the alternatives of the start rule at the same time when
+	 *   parsing by backtracking. Use <tt>null</tt> to try them one after the other.
+	 */
+	public BnfParser(final List<BnfRule> rules, final BnfRule startRule, final ParseTracer tracer,
+					 final int maxRecursionSteps, final boolean partialParsing, final int memoTableSize,
+					 final GrammarAnalysis analysis, final ForkJoinPool pool) {
+		for (final var rule : rules) rule.freeze();
+		startRule.freeze();
+		this.rules = List.copyOf(rules);
+		this.rulesByName = indexRules(rules);
 		this.startRule = startRule;
-		this.logger = logger;
-		this.maxRecursionSteps = maxRecursionSteps;
-		this.partialParsing = partialParsing;
+		this.analysis = analysis;
+		this.backtracking = new BacktrackingParser(startRule, rulesByName, tracer,
+			maxRecursionSteps, partialParsing, memoTableSize, analysis, pool);
+		this.engine = null;
+		this.lexer = null;
+	}
+
+	private static Map<String, BnfRule> indexRules(final List<BnfRule> rules) {
+		final var index = new HashMap<String, BnfRule>();
+		for (final var rule : rules) {
+			index.putIfAbsent(rule.getLeftHandSide().getName(), rule);
+		}
+		return Map.copyOf(index);
 	}
 
 	@Override
@@ -51,178 +158,388 @@ public final class BnfParser {
 	}
 
 
+	/**
+	 * Gets the rule the parser starts with
+	 */
+	public BnfRule getStartRule() {
+		return startRule;
+	}
+
+	/**
+	 * Gets the engine this parser uses
+	 * @return The engine, or <tt>null</tt> if it parses by backtracking
+	 */
+	public ParseEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * Gets the lexer this parser uses
+	 * @return The lexer, or <tt>null</tt> if it parses the characters of the input
+	 */
+	public Lexer getLexer() {
+		return lexer;
+	}
+
+	/**
+	 * Gets the FIRST and nullable sets computed for the grammar
+	 * @return The analysis, or <tt>null</tt> if the parser does not use one
+	 */
+	public GrammarAnalysis getAnalysis() {
+		return analysis;
+	}
+
+	/**
+	 * Writes this parser to a compact binary file. Loading it with
+	 * {@link #load(Path)} gives the same parser without parsing or analyzing
+	 * the grammar again. The tracer and the pool for parallel alternatives
+	 * are not written.
+	 * @throws IllegalArgumentException When the grammar uses a custom token
+	 *   type or engine, which the file can't hold
+	 */
+	public void save(final Path file) throws IOException {
+		try (final var out = Files.newOutputStream(file)) {
+			save(out);
+		}
+	}
+
+	/**
+	 * Writes this parser to a stream, like {@link #save(Path)}
+	 */
+	public void save(final OutputStream out) throws IOException {
+		final var data = new DataOutputStream(new BufferedOutputStream(out));
+		ParserFile.write(this, rules, backtracking, data);
+		data.flush();
+	}
+
+	/**
+	 * Loads a parser written by {@link #save(Path)}, without tracing
+	 */
+	public static BnfParser load(final Path file) throws IOException {
+		try (final var in = Files.newInputStream(file)) {
+			return load(in, ParseTracer.NONE);
+		}
+	}
+
+	/**
+	 * Loads a parser written by {@link #save(OutputStream)}
+	 * @param tracer Receives the parsing steps, use {@link ParseTracer#NONE} to turn tracing off
+	 * @throws IOException When the stream does not hold a parser, or one written by another version
+	 */
+	public static BnfParser load(final InputStream in, final ParseTracer tracer) throws IOException {
+		return ParserFile.read(new DataInputStream(new BufferedInputStream(in)), tracer);
+	}
+
 	/**
 	 * Gets the rule instance with given name
 	 * @param ruleName The name of the rule
 	 * @return The rule, or <tt>null</tt> if no rule exists with given name
 	 */
 	public BnfRule getRule(final String ruleName) {
-		for (final var rule : rules) {
-			if (ruleName.equals(rule.getLeftHandSide().getName()))
-				return rule;
+		return ruleName == null ? null : rulesByName.get(ruleName);
+	}
+	public BnfRule getRule(final Token token) {
+		return token == null ? null : rulesByName.get(token.getName());
+	}
+
+	public Node parse(final String input) {
+		return (engine != null ? engine : backtracking).parse(new ParseInput(input, lexer));
+	}
+
+	/**
+	 * Parses many strings on the common {@link ForkJoinPool}, see {@link #parseAll(List, Executor)}
+	 */
+	public List<ParseResult> parseAll(final List<String> inputs) {
+		return parseAll(inputs, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Parses many strings at once. Every input is parsed as a separate task
+	 * on the executor, the parser is shared by all of them.
+	 * @return The outcome of every input, in the order of the inputs. An input
+	 *   that fails to parse gets its exception, the others are not affected.
+	 */
+	public List<ParseResult> parseAll(final List<String> inputs, final Executor executor) {
+		return parseAll(inputs, this::parse, executor);
+	}
+
+	/**
+	 * Parses many files on the common {@link ForkJoinPool}, see {@link #parseAll(Stream, Executor)}
+	 */
+	public List<ParseResult> parseAll(final Stream<Path> files) {
+		return parseAll(files, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Parses many files at once, each like {@link #parse(Path)}
+	 * @return The outcome of every file, in the order of the stream
+	 */
+	public List<ParseResult> parseAll(final Stream<Path> files, final Executor executor) {
+		return parseAll(files.toList(), this::parse, executor);
+	}
+
+	private static <T> List<ParseResult> parseAll(final List<T> inputs, final Parse<T> parse, final Executor executor) {
+		final var futures = new ArrayList<CompletableFuture<ParseResult>>(inputs.size());
+		for (final var input : inputs) {
+			futures.add(CompletableFuture.supplyAsync(() -> {
+				try {
+					return new ParseResult(parse.apply(input), null);
+				} catch (Exception e) {
+					return new ParseResult(null, e);
+				}
+			}, executor));
 		}
+		final var results = new ArrayList<ParseResult>(futures.size());
+		for (final var future : futures) results.add(future.join());
+		return results;
+	}
+
+	/**
+	 * Parses a list of records in chunks on the common {@link ForkJoinPool},
+	 * see {@link #parseChunked(String, String, RecordSplitter, Executor)}
+	 */
+	public Node parseChunked(final String input, final String recordRule, final RecordSplitter splitter) {
+		return parseChunked(input, recordRule, splitter, ForkJoinPool.commonPool());
+	}
 
-		return null;
+	/**
+	 * Parses a text that is a list of records, for a start rule like
+	 * <tt>&lt;S&gt; := &lt;R&gt; &lt;S&gt; | &lt;R&gt;</tt>. The text is cut into
+	 * chunks where the splitter allows it, and the records of every chunk are
+	 * parsed as a separate task on the executor. The tree is the same as the one
+	 * {@link #parse(String)} gives, as long as every cut is at the start of a
+	 * record. Records are always parsed by backtracking.
+	 * @param recordRule The name of the rule <tt>R</tt>
+	 * @throws ParsingFailed When a record fails, or a record continues past a cut
+	 */
+	public Node parseChunked(final String input, final String recordRule, final RecordSplitter splitter, final Executor executor) {
+		final var record = getRule(recordRule);
+		if (record == null || record != backtracking.getRecordRule())
+			throw new IllegalArgumentException("The start rule is not a list of " + recordRule);
+		final var records = new ArrayList<Node>();
+		parseRecords(input, record, splitter, executor).forEachOrdered(records::add);
+		return backtracking.recordList(records);
 	}
-	public BnfRule getRule(final Token token) {
-		if (token == null) return null;
 
-		final String name = token.toString();
-		for (final var rule : rules) {
-			if (name.equals(rule.getLeftHandSide().toString()))
-				return rule;
+	/**
+	 * Parses a text that is a list of records in chunks, like
+	 * {@link #parseChunked(String, String, RecordSplitter, Executor)}, and
+	 * gives the tree of every record instead of a single tree. The records of
+	 * a chunk are available once it is parsed, so the first records can be
+	 * used while the others are still being parsed. A failing chunk throws
+	 * when the stream reaches it.
+	 * @param recordRule The name of the rule of a record, the start rule can have any shape
+	 */
+	public Stream<Node> parseRecords(final String input, final String recordRule, final RecordSplitter splitter, final Executor executor) {
+		final var record = getRule(recordRule);
+		if (record == null) throw new IllegalArgumentException("No rule named " + recordRule);
+		return parseRecords(input, record, splitter, executor);
+	}
+
+	private Stream<Node> parseRecords(final String input, final BnfRule record, final RecordSplitter splitter, final Executor executor) {
+		final var text = new ParseInput(input, lexer);
+		final var cuts = cuts(input, splitter);
+		final var chunks = new ArrayList<CompletableFuture<List<Node>>>(cuts.size());
+		for (int i = 1; i < cuts.size(); i++) {
+			final int start = cuts.get(i - 1), end = cuts.get(i);
+			// A chunk that is only whitespace has no records
+			if (text.skipWhitespace(start) >= end) continue;
+			chunks.add(CompletableFuture.supplyAsync(() -> backtracking.parseRecords(text, record, start, end), executor));
 		}
+		if (chunks.isEmpty()) throw new ParsingFailed("The input has no records");
+		return chunks.stream().flatMap(chunk -> {
+			try {
+				return chunk.join().stream();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException cause) throw cause;
+				throw e;
+			}
+		});
+	}
 
-		return null;
+	// The offsets where the text is cut into chunks, the first is 0 and the last is its length
+	private static List<Integer> cuts(final String input, final RecordSplitter splitter) {
+		final int size = Math.max(MIN_CHUNK_SIZE, input.length() / (4 * Runtime.getRuntime().availableProcessors()));
+		final var cuts = new ArrayList<Integer>();
+		cuts.add(0);
+		for (int pos = size; pos < input.length(); pos += size) {
+			while (pos < input.length() && !splitter.canSplit(input, pos)) pos++;
+			if (pos == input.length()) break;
+			cuts.add(pos);
+		}
+		cuts.add(input.length());
+		return cuts;
 	}
 
-	public Node parse(final String input) {
-		return orThrow(parse(startRule, new MutableString(input), 0), ParsingFailed::new);
-	}
-
-	private Node parse(final BnfRule rule, MutableString input, int level) {
-		if (level > maxRecursionSteps)
-			throw new MaximumRecursionReached(level);
-
-		Node out_node = null;
-		MutableString n_input = new MutableString(input);
-		boolean wrong_symbol = true;
-		boolean read_epsilon = false;
-		logger.log(FINE, indent(level, "Considering input '" + input + "' with rule " + rule));
-		for (TokenString alt : rule.getAlternatives()) {
-			logger.log(FINE, indent(level, "Alternative " + alt));
-			out_node = new Node();
-			NonTerminalToken left_hand_side = rule.getLeftHandSide();
-			out_node.setToken(left_hand_side.toString());
-			out_node.setValue(left_hand_side.toString());
-			TokenString new_alt = alt.getCopy();
-			Iterator<Token> alt_it = new_alt.iterator();
-			n_input = new MutableString(input);
-			wrong_symbol = false;
-			while (alt_it.hasNext() && !wrong_symbol)
-			{
-				n_input.trim();
-				Token alt_tok = alt_it.next();
-				if (alt_tok instanceof TerminalToken)
-				{
-					if (alt_tok instanceof EpsilonTerminalToken)
-					{
-						// Epsilon always works
-						Node child = new Node();
-						child.setToken("");
-						out_node.addChild(child);       
-						read_epsilon = true;
-						break;
-					}
-					if (n_input.isEmpty())
-					{
-						// Rule expects a token, string has no more: NO MATCH
-						wrong_symbol = true;
-						break;
-					}
-					int match_prefix_size = alt_tok.match(n_input.toString());
-					if (match_prefix_size > 0)
-					{
-						Node child = new Node();
-						MutableString input_tok = n_input.truncateSubstring(0, match_prefix_size);
-						if (alt_tok instanceof RegexTerminalToken)
-						{
-							// In the case of a regex, create children with each capture block
-							child = appendRegexChildren(child, (RegexTerminalToken) alt_tok, input_tok);
-						}
-						child.setToken(input_tok.toString());
-						out_node.addChild(child);
-					}
-					else
-					{
-						// Rule expects a token, token in string does not match: NO MATCH
-						wrong_symbol = true;
-						out_node = null;
-						logger.log(SEVERE, indent(level, "FAILED parsing with case " + new_alt));
-						break;
-					}
-				}
-				else
-				{
-					Node child = null;
-					// Non-terminal token: recursively try to parse it
-					String alt_tok_string = alt_tok.toString();
-					if (partialParsing && n_input.startsWith(alt_tok_string))
-					{
-						n_input.truncateSubstring(0, alt_tok_string.length());
-						child = new Node(alt_tok_string);
-					}
-					else
-					{
-						BnfRule new_rule = getRule(alt_tok);
-						if (new_rule == null)
-						{
-							// No rule found for non-terminal symbol:
-							// there is an error in the grammar
-							throw new MissingRule(alt_tok);
-
-						}
-						child = parse(new_rule, n_input, level + 1);
-						if (child == null)
-						{
-							// Parsing failed
-							wrong_symbol = true;
-							out_node = null;
-							logger.log(SEVERE, indent(level, "FAILED parsing input " + input + " with rule " + rule));
-							break;
-						}
-					}
-					out_node.addChild(child);
-				}
+	private interface Parse<T> {
+		Node apply(T input) throws Exception;
+	}
+
+	/**
+	 * Parses a string, and sends its nodes to a visitor as they are parsed
+	 * instead of building a tree, see {@link BacktrackingParser#parse(ParseInput, ParseNodeVisitor)}.
+	 * Other engines build the tree first.
+	 */
+	public void parse(final String input, final ParseNodeVisitor visitor) throws VisitException {
+		if (engine != null) engine.parse(new ParseInput(input, lexer)).prefixAccept(visitor);
+		else backtracking.parse(new ParseInput(input, lexer), visitor);
+	}
+
+	/**
+	 * Parses a string into a {@link CompactTree}. The backtracking parser
+	 * sends its nodes to the tree as they are parsed, see
+	 * {@link #parse(String, ParseNodeVisitor)}, so the tree of {@link Node}
+	 * objects is never built. Other engines build that tree first, and it is
+	 * dropped once it is stored.
+	 */
+	public CompactTree parseCompact(final String input) {
+		if (engine != null) return CompactTree.of(engine.parse(new ParseInput(input, lexer)));
+		final var collector = new CompactTree.Collector();
+		try {
+			backtracking.parse(new ParseInput(input, lexer), collector);
+		} catch (VisitException e) {
+			// The collector does not throw
+			throw new IllegalStateException(e);
+		}
+		return collector.tree();
+	}
+
+	/**
+	 * Parses the text read from a reader, without holding all of it in memory
+	 * when the grammar allows it, see {@link BacktrackingParser#parse(StreamingInput)}.
+	 * Other engines, and a lexer, need the complete input. The tree still
+	 * holds every record, with the text of its terminals copied out of the
+	 * input, so memory grows with the input. {@link #parseRecords(Reader, Consumer)}
+	 * hands out the records one at a time instead.
+	 */
+	public Node parse(final Reader reader) throws IOException {
+		final var input = new StreamingInput(reader);
+		try {
+			if (engine == null && lexer == null) return backtracking.parse(input);
+			input.loadAll();
+			return (engine != null ? engine : backtracking).parse(new ParseInput(input, lexer));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Parses the UTF-8 text read from a channel, like {@link #parse(Reader)}
+	 */
+	public Node parse(final ReadableByteChannel channel) throws IOException {
+		return parse(Channels.newReader(channel, UTF_8));
+	}
+
+	/**
+	 * Parses the text read from a reader when the start rule is a list of
+	 * records, like <tt>&lt;S&gt; := &lt;R&gt; &lt;S&gt; | &lt;R&gt;</tt>, and
+	 * hands every record to a consumer once it matched. No tree of the records
+	 * is built, so memory holds the record being parsed and the part of the
+	 * input it is read from, whatever the length of the input. Other engines,
+	 * and a lexer, parse the complete input before the records are handed out.
+	 * @throws IllegalArgumentException If the start rule is not a list of records
+	 */
+	public void parseRecords(final Reader reader, final Consumer<Node> consumer) throws IOException {
+		if (backtracking.getRecordRule() == null) throw new IllegalArgumentException("The start rule is not a list of records");
+		if (engine != null || lexer != null) {
+			for (var list = parse(reader); list != null; list = list.childCount() == 2 ? list.child(1) : null) {
+				consumer.accept(list.child(0));
 			}
-			if (!wrong_symbol)
-			{
-				if (!alt_it.hasNext())
-				{
-					// We succeeded in parsing the complete string: done
-					if (level > 0 || (level == 0 && n_input.toString().trim().length() == 0))
-					{
-						break;
-					}
-				}
-				else
-				{
-					// The rule expects more symbols, but there are none
-					// left in the input; set wrong_symbol back to true to
-					// force exploring the next alternative
-					wrong_symbol = true;
-					n_input = new MutableString(input);
-					logger.log(FINE, indent(level, "No symbols left in input; will explore next alternative"));
-					break;
+			return;
+		}
+		try {
+			backtracking.parseRecords(new StreamingInput(reader), consumer);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Parses the UTF-8 text read from a channel, like {@link #parseRecords(Reader, Consumer)}
+	 */
+	public void parseRecords(final ReadableByteChannel channel, final Consumer<Node> consumer) throws IOException {
+		parseRecords(Channels.newReader(channel, UTF_8), consumer);
+	}
+
+	/**
+	 * Parses a UTF-8 file. The file is mapped into memory, and when it only
+	 * holds ASCII it is parsed from there, without decoding or copying it
+	 * onto the heap. Other files are decoded as they are read, like
+	 * {@link #parse(Reader)}.
+	 */
+	public Node parse(final Path file) throws IOException {
+		try (final var channel = FileChannel.open(file, READ)) {
+			if (channel.size() <= Integer.MAX_VALUE) {
+				final var buffer = channel.map(READ_ONLY, 0, channel.size());
+				if (ByteBufferInput.isAscii(buffer)) {
+					final var input = new ByteBufferInput(buffer);
+					return (engine != null ? engine : backtracking).parse(new ParseInput(input, lexer));
 				}
 			}
+			return parse(Channels.newReader(channel, UTF_8));
 		}
-		int chars_consumed = input.length() - n_input.length();
-		if (wrong_symbol) {
-			// We did not consume anything, and the symbol was not epsilon: fail
-			logger.log(SEVERE, indent(level, "FAILED: expected more symbols with rule " + rule));
-			return null;
-		}
-		if (chars_consumed == 0 && !read_epsilon) {
-			// We did not consume anything, and the symbol was not epsilon: fail
-			logger.log(SEVERE, indent(level, "FAILED: did not consume anything of " + input + " with rule " + rule));
-			return null;
+	}
+
+	/**
+	 * Parses a text again after a small change, reusing the parts of the
+	 * previous tree the change did not touch. Only the smallest rule that
+	 * encloses the change is parsed again, or a rule around it when that one
+	 * no longer matches up to where it ended before. The previous tree is
+	 * updated in place and returned. The rules around the reparsed one keep
+	 * the alternative they matched before, so when the change would make an
+	 * earlier alternative of one of them match, only {@link #parse(String)}
+	 * gives that tree. A parser with another engine parses the complete text.
+	 * @param previousTree The tree this parser produced for the text before the change
+	 * @param edit The change
+	 * @return The parse tree of the text after the change
+	 */
+	public Node reparse(final Node previousTree, final TextEdit edit) {
+		if (engine != null) return parse(edit.text());
+
+		// The rule nodes that enclose the change from the root down, and their index in their parent
+		final var path = new ArrayList<Node>();
+		final var indexes = new ArrayList<Integer>();
+		path.add(previousTree);
+		indexes.add(-1);
+		Node parent = previousTree;
+		while (parent != null) {
+			final var node = parent;
+			parent = null;
+			for (int i = 0; i < node.childCount() && parent == null; i++) {
+				final var child = node.child(i);
+				if (child.getStart() < edit.start() && edit.oldEnd() < child.getEnd() && ruleOf(child) != null) {
+					parent = child;
+					path.add(child);
+					indexes.add(i);
+				}
+			}
 		}
-		input.truncateSubstring(chars_consumed);
-		if (level == 0 && !input.isEmpty()) {
-			// The top-level rule must parse the complete string
-			logger.log(SEVERE, indent(level, "FAILED: The top-level rule must parse the complete string"));
-			return null;
+
+		final var input = new ParseInput(edit.text(), lexer);
+		for (int depth = path.size() - 1; depth > 0; depth--) {
+			final var node = path.get(depth);
+			final var replacement = backtracking.parse(input, ruleOf(node), node.getStart(), node.getEnd() + edit.delta());
+			if (replacement == null) continue;
+
+			path.get(depth - 1).setChild(indexes.get(depth), replacement);
+			// The other nodes now refer to the new text, those after the change moved with it.
+			// A memoizing parser shares nodes between rules, they are moved once.
+			final var moved = Collections.<Node>newSetFromMap(new IdentityHashMap<>());
+			for (int i = depth - 1; i >= 0; i--) {
+				final var ancestor = path.get(i);
+				final int index = indexes.get(i + 1);
+				for (int j = 0; j < ancestor.childCount(); j++) {
+					if (j != index) ancestor.child(j).moveSpan(edit.text(), j < index ? 0 : edit.delta(), moved);
+				}
+			}
+			return previousTree;
 		}
-		return out_node;
+		return parse(edit.text());
 	}
 
-	private static Node appendRegexChildren(final Node node, final RegexTerminalToken token, final MutableString string) {
-		final var blocks = token.getCaptureBlocks(string.toString());
-		for (final var block : blocks) {
-			node.addChild(new CaptureBlockNode(block));
-		}
-		return node;
+	// The rule a node of the parse tree was created for, or null for a terminal
+	private BnfRule ruleOf(final Node node) {
+		return node.getValue() == null ? null : getRule(node.getToken());
 	}
 
-}
\ No newline at end of file
+}
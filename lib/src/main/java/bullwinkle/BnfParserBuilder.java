@@ -1,32 +1,60 @@
 package bullwinkle;
 
+import bullwinkle.analysis.GrammarAnalysis;
+import bullwinkle.analysis.LlTable;
+import bullwinkle.engine.EarleyParser;
+import bullwinkle.engine.EngineType;
+import bullwinkle.engine.PredictiveParser;
 import bullwinkle.error.InvalidRule;
+import bullwinkle.error.MissingRule;
+import bullwinkle.lexer.Lexer;
+import bullwinkle.tokens.LiteralSetTerminalToken;
 import bullwinkle.tokens.NonTerminalToken;
+import bullwinkle.tokens.TerminalToken;
 import bullwinkle.tokens.Token;
 import bullwinkle.tokens.TokenString;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static bullwinkle.util.LoggingParseTracer.forLogger;
 import static java.util.logging.Level.*;
 
 public class BnfParserBuilder {
 
+    // The shortest run of literal alternatives that is merged into a trie
+    private static final int MIN_LITERAL_SET = 4;
+
     public static BnfParserBuilder newBnfParser() {
         return new BnfParserBuilder();
     }
 
-    private final List<BnfRule> rules = new LinkedList<>();
+    private final List<BnfRule> rules = new ArrayList<>();
+    private final Map<String, BnfRule> rulesByName = new HashMap<>();
     private BnfRule startRule;
     private int maxRecursionSteps = 50;
     private boolean partialParsing = false;
     private boolean useStickyRules = false;
+    private boolean strictRules = false;
+    private boolean memoize = false;
+    private boolean predictive = true;
+    private boolean literalSets = true;
+    private boolean lexer = false;
+    private int memoTableSize = 100_000;
+    private ForkJoinPool alternativesPool;
+    private EngineType engine = EngineType.BACKTRACKING;
 
     private Logger logger = Logger.getAnonymousLogger();
+    private ParseTracer tracer;
 
     private BnfParserBuilder() {
         logger.setLevel(OFF);
@@ -41,7 +69,7 @@ public class BnfParserBuilder {
      * @param caseString The case to add
      */
     public BnfParserBuilder addCaseToRule(final int index, final String ruleName, final String caseString) {
-        final var rule = getRule(ruleName, rules);
+        final var rule = rulesByName.get(ruleName);
         if (rule == null) return this;
 
         rule.addAlternative(index, new TokenString(new NonTerminalToken(caseString)));
@@ -94,6 +122,125 @@ public class BnfParserBuilder {
         return this;
     }
 
+    /**
+     * Makes building the parser fail with a {@link MissingRule} when the grammar
+     * refers to a rule that is not defined. Without this, the error is only
+     * thrown when parsing reaches the undefined rule, so grammars with unused
+     * references still work.
+     * Default is false.
+     * @param strictRules true for enabled, false for disabled
+     */
+    public BnfParserBuilder strictRules(final boolean strictRules) {
+        this.strictRules = strictRules;
+        return this;
+    }
+
+    /**
+     * Enables packrat memoization. The parser then remembers the outcome of
+     * every (rule, input offset) pair it tries, so alternatives that share a
+     * prefix don't parse that prefix again. This trades memory for turning
+     * exponential backtracking into linear time.
+     * Default is false.
+     * @param memoize true for enabled, false for disabled
+     */
+    public BnfParserBuilder memoize(final boolean memoize) {
+        this.memoize = memoize;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of outcomes the memo table holds during a single
+     * parse. When it is full the least recently used outcome is dropped.
+     * Only used when memoization is enabled. Default is 100000.
+     * @param size The maximum number of entries. Must be positive.
+     */
+    public BnfParserBuilder memoTableSize(final int size) {
+        if (size > 0) memoTableSize = size;
+        return this;
+    }
+
+    /**
+     * Tries the alternatives of the start rule at the same time, each on a
+     * thread of the pool, for grammars whose start rule has several expensive
+     * alternatives. The first alternative that matches still wins, and the
+     * alternatives after it stop once it did, so the parse tree does not change.
+     * A tracer must be thread-safe to be used with this. Only applies to the
+     * backtracking parser, and not to streaming input.
+     * Default is null, which tries them one after the other.
+     * @param pool The pool, for instance {@link ForkJoinPool#commonPool()}
+     */
+    public BnfParserBuilder parallelAlternatives(final ForkJoinPool pool) {
+        this.alternativesPool = pool;
+        return this;
+    }
+
+    /**
+     * Sets the tracer that receives every step the parser takes. When no
+     * tracer is set the steps are written to the logger, if its level is
+     * SEVERE or lower at the time the parser is built. Otherwise tracing
+     * is off and costs nothing.
+     * @param tracer The tracer
+     */
+    public BnfParserBuilder tracer(final ParseTracer tracer) {
+        this.tracer = tracer;
+        return this;
+    }
+
+    /**
+     * Makes the parser skip alternatives that can't start with the next
+     * character of the input. The FIRST sets of the grammar needed for this
+     * are computed when the parser is built. The parse tree does not change.
+     * Default is true.
+     * @param predictive true for enabled, false for disabled
+     */
+    public BnfParserBuilder predictive(final boolean predictive) {
+        this.predictive = predictive;
+        return this;
+    }
+
+    /**
+     * Merges runs of alternatives that are a single literal, like a list of
+     * keywords, into one {@link LiteralSetTerminalToken}. It matches all of them
+     * in one pass over the input. The first literal that matches wins, like it
+     * does for the alternatives, so the parse tree does not change. The start
+     * rule, and the grammar of an Earley parser, are left as they are.
+     * Default is true.
+     * @param literalSets true for enabled, false for disabled
+     */
+    public BnfParserBuilder literalSets(final boolean literalSets) {
+        this.literalSets = literalSets;
+        return this;
+    }
+
+    /**
+     * Splits the input into the terminals of the grammar before parsing, with
+     * a {@link Lexer}. The parser then matches every terminal against a single
+     * lexeme instead of the characters of the input, so text is never
+     * matched again when the parser backtracks. This changes what a grammar
+     * accepts: a terminal must match a whole lexeme, which is the longest one
+     * at its offset. Can't be combined with partial parsing.
+     * Default is false.
+     * @param lexer true for enabled, false for disabled
+     */
+    public BnfParserBuilder lexer(final boolean lexer) {
+        this.lexer = lexer;
+        return this;
+    }
+
+    /**
+     * Selects the algorithm the parser uses. The backtracking parser tries the
+     * alternatives of a rule in order and takes the first that matches. The
+     * Earley parser also accepts left-recursive and ambiguous grammars, and
+     * has no recursion limit. For an ambiguous input it builds the tree that
+     * prefers the first alternative of every rule.
+     * Default is {@link EngineType#BACKTRACKING}.
+     * @param engine The algorithm
+     */
+    public BnfParserBuilder engine(final EngineType engine) {
+        if (engine != null) this.engine = engine;
+        return this;
+    }
+
     public BnfParserBuilder logger(final Logger logger) {
         this.logger = logger;
         return this;
@@ -115,7 +262,7 @@ public class BnfParserBuilder {
     }
 
     public BnfParserBuilder startRule(final NonTerminalToken token) {
-        startRule = getRule(token, rules);
+        startRule = token == null ? null : rulesByName.get(token.getName());
         return this;
     }
 
@@ -145,51 +292,140 @@ public class BnfParserBuilder {
         return addRule(BnfRule.parseRule(rule, useStickyRules));
     }
     public BnfParserBuilder addRule(final BnfRule rule) {
-        final var r_left = rule.getLeftHandSide();
-        for (final var in_rule : rules) {
-            final var in_left = in_rule.getLeftHandSide();
-            if (r_left.equals(in_left)) {
-                in_rule.addAlternatives(rule.getAlternatives());
-                break;
-            }
-        }
-        // No rule with the same LHS was found
+        final var in_rule = rulesByName.get(rule.getLeftHandSide().getName());
+        if (in_rule != null) in_rule.addAlternatives(rule.getAlternatives());
+        else rulesByName.put(rule.getLeftHandSide().getName(), rule);
         rules.add(rule);
         return this;
     }
 
     public BnfParserBuilder addRule(final int position, final BnfRule rule) {
-        final var r_left = rule.getLeftHandSide();
-        for (final var in_rule : rules) {
-            final var in_left = in_rule.getLeftHandSide();
-            if (r_left.equals(in_left)) {
-                in_rule.addAlternatives(position, rule.getAlternatives());
-                break;
-            }
-        }
-        // No rule with the same LHS was found
+        final var in_rule = rulesByName.get(rule.getLeftHandSide().getName());
+        if (in_rule != null) in_rule.addAlternatives(position, rule.getAlternatives());
+        else rulesByName.put(rule.getLeftHandSide().getName(), rule);
         rules.add(rule);
         return this;
     }
 
+    /**
+     * Builds the parser. The parser gets its own copy of the rules, and
+     * freezes them: it can't change anymore, and can be shared by any number
+     * of threads. The builder can still be changed to build other parsers.
+     */
     public BnfParser build() {
         if (startRule == null) {
             if (rules.isEmpty()) throw new IllegalArgumentException("No start rule could be found");
             startRule = rules.get(0);
         }
-        return new BnfParser(rules, startRule, logger, maxRecursionSteps, partialParsing);
+        if (lexer && partialParsing) throw new IllegalArgumentException("A lexer can't be used with partial parsing");
+
+        final var copies = new IdentityHashMap<BnfRule, BnfRule>();
+        final var rules = new ArrayList<BnfRule>();
+        for (final var rule : this.rules) rules.add(copies.computeIfAbsent(rule, BnfRule::copy));
+        final var rulesByName = new HashMap<String, BnfRule>();
+        this.rulesByName.forEach((name, rule) -> rulesByName.put(name, copies.get(rule)));
+        final var startRule = copies.computeIfAbsent(this.startRule, BnfRule::copy);
+
+        resolveRules(rules, rulesByName, strictRules);
+        if (literalSets && engine != EngineType.EARLEY) mergeLiterals(rules, startRule);
+        for (final var rule : rules) rule.freeze();
+        startRule.freeze();
+        final var parser = new BnfParser(rules, startRule, effectiveTracer(),
+            maxRecursionSteps, partialParsing, memoize ? memoTableSize : 0,
+            predictive ? GrammarAnalysis.analyze(rules, partialParsing) : null, alternativesPool);
+        final var selected = switch (engine) {
+            case BACKTRACKING -> parser;
+            case PREDICTIVE -> predictive(parser, rules);
+            case EARLEY -> new BnfParser(parser, new EarleyParser(startRule, effectiveTracer(), partialParsing));
+        };
+        return lexer ? new BnfParser(selected, selected.getEngine(), Lexer.of(rules)) : selected;
     }
 
-    private static BnfRule getRule(final Token token, final List<BnfRule> rules) {
-        return token == null ? null : getRule(token.getName(), rules);
+    /**
+     * Builds the parser, and checks whether the grammar is LL(1): whether the
+     * next character of the input always tells which alternative of a rule to
+     * use. If it is, the parser uses a table-driven {@link PredictiveParser}
+     * that never backtracks. Otherwise the conflicts are logged as a warning,
+     * and the parser backtracks like the one returned by {@link #build()}.
+     * This is the same as selecting {@link EngineType#PREDICTIVE}.
+     */
+    public BnfParser compile() {
+        return engine(EngineType.PREDICTIVE).build();
     }
 
-    private static BnfRule getRule(final String ruleName, final List<BnfRule> rules) {
+    private BnfParser predictive(final BnfParser parser, final List<BnfRule> rules) {
+        final var analysis = parser.getAnalysis() != null ? parser.getAnalysis()
+            : GrammarAnalysis.analyze(rules, partialParsing);
+        final var table = LlTable.build(parser.getStartRule(), analysis, partialParsing);
+        if (table.isLl1()) return new BnfParser(parser, new PredictiveParser(table, parser.getStartRule(), effectiveTracer()));
+
+        if (logger.isLoggable(WARNING)) {
+            logger.warning("The grammar is not LL(1), using a backtracking parser. Conflicts:\n  "
+                + String.join("\n  ", table.getConflicts()));
+        }
+        return parser;
+    }
+
+    private ParseTracer effectiveTracer() {
+        return tracer != null ? tracer : forLogger(logger);
+    }
+
+    /**
+     * Links every non-terminal token in the rules to the rule it refers to,
+     * so the parser never has to look rules up by name.
+     * @throws MissingRule If strict and a token refers to a rule that does not exist
+     */
+    private static void resolveRules(final List<BnfRule> rules, final Map<String, BnfRule> rulesByName,
+                                     final boolean strict) {
+        for (final var rule : rules) {
+            for (final var alternative : rule.getAlternatives()) {
+                for (final var token : alternative) {
+                    if (!(token instanceof NonTerminalToken nonTerminal)) continue;
+                    final var target = rulesByName.get(nonTerminal.getName());
+                    if (target == null && strict) throw new MissingRule(nonTerminal);
+                    nonTerminal.resolve(target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces every run of at least {@link #MIN_LITERAL_SET} alternatives that
+     * are a single literal by one alternative with a {@link LiteralSetTerminalToken}.
+     * The start rule is skipped: when one of its alternatives leaves input the
+     * next one is tried, so each literal must stay an alternative.
+     */
+    private static void mergeLiterals(final List<BnfRule> rules, final BnfRule startRule) {
         for (final var rule : rules) {
-            final var lhs = rule.getLeftHandSide().getName();
-            if (ruleName.equals(lhs)) return rule;
+            if (rule == startRule) continue;
+            final var alternatives = rule.getAlternatives();
+            final var merged = new ArrayList<TokenString>();
+            int i = 0;
+            while (i < alternatives.size()) {
+                final boolean tryLast = alternatives.get(i).getTryLast();
+                int end = i;
+                while (end < alternatives.size() && isLiteral(alternatives.get(end))
+                    && alternatives.get(end).getTryLast() == tryLast) end++;
+
+                if (end - i < MIN_LITERAL_SET) {
+                    merged.addAll(alternatives.subList(i, Math.max(end, i + 1)));
+                    i = Math.max(end, i + 1);
+                    continue;
+                }
+                final var literals = new ArrayList<String>();
+                for (final var alternative : alternatives.subList(i, end)) literals.add(alternative.getFirst().getName());
+                final var set = new TokenString(new LiteralSetTerminalToken(literals));
+                set.setTryLast(tryLast);
+                merged.add(set);
+                i = end;
+            }
+            if (merged.size() != alternatives.size()) rule.replaceAlternatives(merged);
         }
-        return null;
+    }
+
+    private static boolean isLiteral(final TokenString alternative) {
+        return alternative.size() == 1 && alternative.getFirst().getClass() == TerminalToken.class
+            && !alternative.getFirst().getName().isEmpty();
     }
 
     public static List<BnfRule> parseRules(final BufferedReader reader, final boolean useSticky) throws IOException {
@@ -5,6 +5,7 @@ import bullwinkle.tokens.*;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import static bullwinkle.Constants.SPACE;
@@ -16,6 +17,10 @@ import static bullwinkle.util.Functions.unescapeString;
 public final class BnfRule {
 	// A list of token strings that for all the possible cases of that rule
 	private final List<TokenString> alternatives;
+	// The alternatives in the order they are tried, computed when first needed
+	private Ordered ordered;
+	// Whether the rule belongs to a built parser, and can no longer change
+	private boolean frozen;
 
 	// The left-hand side of the rule. Since we deal with BNF grammars, this
 	// left-hand side must be a single non-terminal symbol.
@@ -25,6 +30,14 @@ public final class BnfRule {
 		alternatives = new ArrayList<>();
 	}
 
+	/**
+	 * Creates a rule out of its parts, as they were read from a parser file
+	 */
+	BnfRule(final NonTerminalToken leftHandSide, final List<TokenString> alternatives) {
+		this.leftHandSide = leftHandSide;
+		this.alternatives = new ArrayList<>(alternatives);
+	}
+
 	/**
 	 * Creates a BNF rule out of a string
 	 * @param input The string that contains a BNF rule. This string must follow the syntactical restrictions described in the README
@@ -48,7 +61,7 @@ public final class BnfRule {
 			throw new InvalidRule(lineNumber, input, "Right-hand side of BNF rule is empty");
 
 		if (lr[1].startsWith("^")) {
-			ret.alternatives.add(new TokenString(new RegexTerminalToken(unescapeString(lr[1]))));
+			ret.alternatives.add(new TokenString(new RegexTerminalToken(unescapeString(lr[1]), true)));
 			return ret;
 		}
 
@@ -149,24 +162,46 @@ public final class BnfRule {
 	 * @param ts The alternative to add
 	 */
 	public void addAlternative(final int index, final TokenString ts) {
+		checkNotFrozen();
 		alternatives.add(index, ts);
+		ordered = null;
 	}
 
 	/**
-	 * Retrieves the list of all the alternatives that this rule defines
-	 * @return A list of alternatives, each of which is a string of tokens
-	 *   (either terminal or non-terminal)
+	 * Retrieves the list of all the alternatives that this rule defines, in the
+	 * order the parser tries them: the sticky alternatives come last
+	 * @return An unmodifiable list of alternatives, each of which is a string of
+	 *   tokens (either terminal or non-terminal)
 	 */
 	public List<TokenString> getAlternatives() {
-		final var orderedList = new ArrayList<TokenString>();
-		final var lastElements = new ArrayList<TokenString>();
-		for (final TokenString ts : alternatives) {
-			(ts.getTryLast() ? lastElements : orderedList).add(ts);
-		}
-		orderedList.addAll(lastElements);
-		return orderedList;
+		return ordered().alternatives;
+	}
+
+	/**
+	 * Retrieves the tokens of every alternative, in the same order as
+	 * {@link #getAlternatives()}. Every call returns new arrays, an engine
+	 * keeps them instead of asking again for every rule it enters.
+	 */
+	public Token[][] getAlternativeTokens() {
+		final var tokens = ordered().tokens;
+		final var copy = new Token[tokens.length][];
+		for (int i = 0; i < tokens.length; i++) copy[i] = tokens[i].clone();
+		return copy;
+	}
+
+	/**
+	 * Retrieves the alternatives in the order they were declared
+	 */
+	List<TokenString> getDeclaredAlternatives() {
+		return Collections.unmodifiableList(alternatives);
+	}
+
+	private Ordered ordered() {
+		var current = ordered;
+		if (current == null) ordered = current = new Ordered(alternatives);
+		return current;
 	}
-	
+
 	/**
 	 * Retrieves the left-hand side symbol of the rule
 	 * @return The left-hand side symbol
@@ -198,7 +233,9 @@ public final class BnfRule {
 	 */
 	public void addAlternatives(Collection<TokenString> alternatives)
 	{
+		checkNotFrozen();
 		this.alternatives.addAll(alternatives);
+		ordered = null;
 	}
 
 	/**
@@ -207,9 +244,79 @@ public final class BnfRule {
 	 * @param alternatives The alternatives to add
 	 */
 	public void addAlternatives(final int position, final Collection<TokenString> alternatives) {
+		checkNotFrozen();
 		for (final TokenString alt : alternatives) {
 			this.alternatives.add(position, alt);
 		}
+		ordered = null;
+	}
+
+	/**
+	 * Replaces all the alternatives of the rule
+	 * @param alternatives The new alternatives
+	 */
+	void replaceAlternatives(final Collection<TokenString> alternatives) {
+		checkNotFrozen();
+		this.alternatives.clear();
+		this.alternatives.addAll(alternatives);
+		ordered = null;
+	}
+
+	/**
+	 * Creates a copy of this rule that a parser can own. The alternatives and
+	 * their non-terminal tokens are copied, so resolving the copy doesn't
+	 * change this rule. The terminal tokens are shared, and can't be renamed
+	 * once the copy is frozen.
+	 */
+	BnfRule copy() {
+		final var copy = new BnfRule();
+		copy.leftHandSide = new NonTerminalToken(leftHandSide.getName());
+		for (final var alternative : alternatives) {
+			final var tokens = new TokenString();
+			tokens.setTryLast(alternative.getTryLast());
+			for (final var token : alternative) {
+				tokens.add(token instanceof NonTerminalToken ? new NonTerminalToken(token.getName()) : token);
+			}
+			copy.alternatives.add(tokens);
+		}
+		return copy;
+	}
+
+	/**
+	 * Stops the rule, its alternatives and the links of their non-terminals
+	 * from changing once it belongs to a built parser, the order of its
+	 * alternatives is computed right away. The parser can then be used by
+	 * many threads at once.
+	 */
+	void freeze() {
+		for (final var alternative : alternatives) alternative.freeze();
+		ordered();
+		frozen = true;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) throw new IllegalStateException("Rule " + leftHandSide + " belongs to a built parser and can't be changed");
+	}
+
+	/**
+	 * The alternatives of a rule with the sticky ones last, and their tokens as arrays.
+	 * It is immutable, so it can be shared between threads without locking.
+	 */
+	private static final class Ordered {
+		private final List<TokenString> alternatives;
+		private final Token[][] tokens;
+
+		private Ordered(final List<TokenString> alternatives) {
+			final var orderedList = new ArrayList<TokenString>();
+			final var lastElements = new ArrayList<TokenString>();
+			for (final TokenString ts : alternatives) {
+				(ts.getTryLast() ? lastElements : orderedList).add(ts);
+			}
+			orderedList.addAll(lastElements);
+			this.alternatives = Collections.unmodifiableList(orderedList);
+			this.tokens = new Token[orderedList.size()][];
+			for (int i = 0; i < tokens.length; i++) tokens[i] = orderedList.get(i).toArray(new Token[0]);
+		}
 	}
 
 }
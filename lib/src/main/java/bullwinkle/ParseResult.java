@@ -0,0 +1,16 @@
+package bullwinkle;
+
+import bullwinkle.nodes.Node;
+
+/**
+ * The outcome of parsing one input of a batch, see {@link BnfParser#parseAll(java.util.List)}
+ * @param tree The parse tree, or <tt>null</tt> if parsing failed
+ * @param error The reason parsing failed, or <tt>null</tt> if it succeeded
+ */
+public record ParseResult(Node tree, Exception error) {
+
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+}
@@ -0,0 +1,85 @@
+package bullwinkle;
+
+import bullwinkle.tokens.Token;
+import bullwinkle.tokens.TokenString;
+import bullwinkle.util.ParseInput;
+
+/**
+ * Receives the steps the parser takes while it parses an input. All methods
+ * do nothing by default, so an implementation only overrides what it needs.
+ * The parser passes objects it already has, a tracer that does nothing
+ * therefore costs nothing.
+ */
+public interface ParseTracer {
+
+	/**
+	 * The tracer used when tracing is off
+	 */
+	ParseTracer NONE = new ParseTracer() {};
+
+	/**
+	 * The reasons for which a rule can fail
+	 */
+	enum Failure {
+		/** None of the alternatives matched the input */
+		NO_MATCHING_ALTERNATIVE,
+		/** An alternative matched, but did not consume any input */
+		NOTHING_CONSUMED,
+		/** The start rule matched, but did not consume the complete input */
+		INPUT_REMAINING
+	}
+
+	/**
+	 * Called when the parser starts trying a rule
+	 * @param rule The rule
+	 * @param input The input being parsed
+	 * @param offset The offset at which the rule is tried
+	 * @param level The recursion depth
+	 */
+	default void enterRule(BnfRule rule, ParseInput input, int offset, int level) {}
+
+	/**
+	 * Called when the parser starts trying one of the alternatives of a rule
+	 */
+	default void tryAlternative(BnfRule rule, TokenString alternative, int level) {}
+
+	/**
+	 * Called when an alternative is skipped because it can't start with the
+	 * next character of the input
+	 * @param offset The offset of the next character
+	 */
+	default void skipAlternative(BnfRule rule, TokenString alternative, int offset, int level) {}
+
+	/**
+	 * Called when a terminal token matched the input
+	 * @param length The number of characters matched
+	 */
+	default void matchTerminal(Token token, ParseInput input, int offset, int length, int level) {}
+
+	/**
+	 * Called when an alternative did not match
+	 * @param token The token of the alternative that did not match
+	 * @param offset The offset at which the token was tried
+	 */
+	default void failAlternative(BnfRule rule, TokenString alternative, Token token, int offset, int level) {}
+
+	/**
+	 * Called when an alternative ended on an epsilon while it has more tokens.
+	 * The parser then gives up on the rule.
+	 */
+	default void missingSymbols(BnfRule rule, TokenString alternative, int level) {}
+
+	/**
+	 * Called when a rule failed
+	 * @param offset The offset at which the rule was tried
+	 */
+	default void fail(BnfRule rule, ParseInput input, int offset, int level, Failure reason) {}
+
+	/**
+	 * Called when a rule matched
+	 * @param start The offset of the first character matched by the rule
+	 * @param end The offset after the last character matched by the rule
+	 */
+	default void succeed(BnfRule rule, ParseInput input, int start, int end, int level) {}
+
+}
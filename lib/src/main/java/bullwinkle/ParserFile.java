@@ -0,0 +1,216 @@
+package bullwinkle;
+
+import bullwinkle.analysis.GrammarAnalysis;
+import bullwinkle.analysis.LlTable;
+import bullwinkle.engine.BacktrackingParser;
+import bullwinkle.engine.EarleyParser;
+import bullwinkle.engine.EngineType;
+import bullwinkle.engine.PredictiveParser;
+import bullwinkle.lexer.Lexer;
+import bullwinkle.tokens.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The binary format of a built parser. It holds the rules with their tokens
+ * as the parser uses them, unescaped and with every non-terminal linked to
+ * its rule, the settings of the parser and the FIRST sets of the grammar.
+ * Reading it creates the rules and tokens directly, the grammar is not parsed
+ * or analyzed again. The LL(1) table and the lexer are built from the rules,
+ * which takes a single pass.
+ */
+enum ParserFile {;
+
+	private static final int MAGIC = 0x424E4650; // "BNFP"
+	private static final int VERSION = 1;
+
+	// The kinds of tokens
+	private static final int NON_TERMINAL = 0, LITERAL = 1, EPSILON = 2, REGEX = 3, LITERAL_SET = 4, NUMBER = 5, STRING = 6;
+
+	static void write(final BnfParser parser, final List<BnfRule> listedRules, final BacktrackingParser backtracking,
+					  final DataOutputStream out) throws IOException {
+		final var engine = parser.getEngine() == null ? EngineType.BACKTRACKING
+			: parser.getEngine() instanceof PredictiveParser ? EngineType.PREDICTIVE
+			: parser.getEngine() instanceof EarleyParser ? EngineType.EARLEY : null;
+		if (engine == null) throw new IllegalArgumentException("Engine " + parser.getEngine().getClass().getName() + " can't be saved");
+
+		// The rules of the parser come first, then the rules only reached through a token
+		final var rules = new ArrayList<>(listedRules);
+		final var indexes = new IdentityHashMap<BnfRule, Integer>();
+		for (final var rule : rules) indexes.putIfAbsent(rule, indexes.size());
+		final var todo = new ArrayDeque<>(rules);
+		todo.add(parser.getStartRule());
+		while (!todo.isEmpty()) {
+			final var rule = todo.pop();
+			if (indexes.putIfAbsent(rule, rules.size()) == null) rules.add(rule);
+			for (final var alternative : rule.getDeclaredAlternatives()) {
+				for (final var token : alternative) {
+					if (token instanceof NonTerminalToken nonTerminal && nonTerminal.getRule() != null
+						&& !indexes.containsKey(nonTerminal.getRule())) todo.add(nonTerminal.getRule());
+				}
+			}
+		}
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(backtracking.getMaxRecursionSteps());
+		out.writeBoolean(backtracking.isPartialParsing());
+		out.writeInt(backtracking.getMemoTableSize());
+		out.writeByte(engine.ordinal());
+		out.writeBoolean(parser.getLexer() != null);
+
+		out.writeInt(rules.size());
+		out.writeInt(listedRules.size());
+		for (final var rule : rules) {
+			writeString(out, rule.getLeftHandSide().getName());
+			final var alternatives = rule.getDeclaredAlternatives();
+			out.writeInt(alternatives.size());
+			for (final var alternative : alternatives) {
+				out.writeBoolean(alternative.getTryLast());
+				out.writeInt(alternative.size());
+				for (final var token : alternative) writeToken(out, token, indexes);
+			}
+		}
+		out.writeInt(indexes.get(parser.getStartRule()));
+
+		out.writeBoolean(parser.getAnalysis() != null);
+		if (parser.getAnalysis() != null) parser.getAnalysis().write(out, rules);
+	}
+
+	private static void writeToken(final DataOutputStream out, final Token token, final Map<BnfRule, Integer> indexes) throws IOException {
+		if (token instanceof NonTerminalToken nonTerminal) {
+			out.writeByte(NON_TERMINAL);
+			writeString(out, token.getName());
+			out.writeInt(nonTerminal.getRule() == null ? -1 : indexes.get(nonTerminal.getRule()));
+		} else if (token instanceof EpsilonTerminalToken) {
+			out.writeByte(EPSILON);
+		} else if (token instanceof RegexTerminalToken regex) {
+			out.writeByte(REGEX);
+			writeString(out, token.getName());
+			out.writeBoolean(regex.isAnchored());
+		} else if (token instanceof LiteralSetTerminalToken set) {
+			out.writeByte(LITERAL_SET);
+			out.writeInt(set.getLiterals().size());
+			for (final var literal : set.getLiterals()) writeString(out, literal);
+		} else if (token.getClass() == NumberTerminalToken.class) {
+			out.writeByte(NUMBER);
+			writeString(out, token.getName());
+		} else if (token.getClass() == StringTerminalToken.class) {
+			out.writeByte(STRING);
+			writeString(out, token.getName());
+		} else if (token.getClass() == TerminalToken.class) {
+			out.writeByte(LITERAL);
+			writeString(out, token.getName());
+		} else {
+			throw new IllegalArgumentException("Token type " + token.getClass().getName() + " can't be saved");
+		}
+	}
+
+	static BnfParser read(final DataInputStream in, final ParseTracer tracer) throws IOException {
+		if (in.readInt() != MAGIC) throw new IOException("Not a parser file");
+		final int version = in.readInt();
+		if (version != VERSION) throw new IOException("Unsupported parser file version " + version);
+		final int maxRecursionSteps = in.readInt();
+		final boolean partialParsing = in.readBoolean();
+		final int memoTableSize = in.readInt();
+		final var engine = EngineType.values()[in.readByte()];
+		final boolean lexer = in.readBoolean();
+
+		final int count = in.readInt();
+		final int listed = in.readInt();
+		// The rules are created first, so the tokens can link to rules that come later
+		final var names = new NonTerminalToken[count];
+		final var alternatives = new ArrayList<List<TokenString>>(count);
+		final var links = new ArrayList<Link>();
+		for (int i = 0; i < count; i++) {
+			names[i] = new NonTerminalToken(readString(in));
+			final int size = in.readInt();
+			final var strings = new ArrayList<TokenString>(size);
+			for (int j = 0; j < size; j++) {
+				final var tokens = new TokenString();
+				tokens.setTryLast(in.readBoolean());
+				final int length = in.readInt();
+				for (int k = 0; k < length; k++) tokens.add(readToken(in, links));
+				strings.add(tokens);
+			}
+			alternatives.add(strings);
+		}
+		final var rules = new ArrayList<BnfRule>(count);
+		for (int i = 0; i < count; i++) rules.add(new BnfRule(names[i], alternatives.get(i)));
+		for (final var link : links) link.token().resolve(rules.get(link.rule()));
+		for (final var rule : rules) rule.freeze();
+		final var startRule = rules.get(in.readInt());
+		final var analysis = in.readBoolean() ? GrammarAnalysis.read(in, rules, partialParsing) : null;
+
+		final var parserRules = rules.subList(0, listed);
+		final var parser = new BnfParser(parserRules, startRule, tracer, maxRecursionSteps, partialParsing, memoTableSize, analysis);
+		final var selected = switch (engine) {
+			case BACKTRACKING -> parser;
+			case PREDICTIVE -> new BnfParser(parser, new PredictiveParser(LlTable.build(startRule,
+				analysis != null ? analysis : GrammarAnalysis.analyze(parserRules, partialParsing), partialParsing), startRule, tracer));
+			case EARLEY -> new BnfParser(parser, new EarleyParser(startRule, tracer, partialParsing));
+		};
+		return lexer ? new BnfParser(selected, selected.getEngine(), Lexer.of(parserRules)) : selected;
+	}
+
+	private static Token readToken(final DataInputStream in, final List<Link> links) throws IOException {
+		final int kind = in.readByte();
+		switch (kind) {
+			case NON_TERMINAL -> {
+				final var token = new NonTerminalToken(readString(in));
+				final int rule = in.readInt();
+				if (rule >= 0) links.add(new Link(token, rule));
+				return token;
+			}
+			case LITERAL -> {
+				return new TerminalToken(readString(in));
+			}
+			case EPSILON -> {
+				return new EpsilonTerminalToken();
+			}
+			case REGEX -> {
+				final var pattern = readString(in);
+				return new RegexTerminalToken(pattern, in.readBoolean());
+			}
+			case LITERAL_SET -> {
+				final int size = in.readInt();
+				final var literals = new ArrayList<String>(size);
+				for (int i = 0; i < size; i++) literals.add(readString(in));
+				return new LiteralSetTerminalToken(literals);
+			}
+			case NUMBER -> {
+				return new NumberTerminalToken(readString(in));
+			}
+			case STRING -> {
+				return new StringTerminalToken(readString(in));
+			}
+			default -> throw new IOException("Unknown token kind " + kind);
+		}
+	}
+
+	// A non-terminal token, and the index of the rule it refers to
+	private record Link(NonTerminalToken token, int rule) {}
+
+	// Unlike writeUTF, a string can be longer than 64 KB, a regex for instance
+	private static void writeString(final DataOutputStream out, final String s) throws IOException {
+		final byte[] bytes = s.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(final DataInputStream in) throws IOException {
+		final byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+}
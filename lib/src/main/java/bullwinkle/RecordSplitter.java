@@ -0,0 +1,27 @@
+package bullwinkle;
+
+/**
+ * Tells where a text that is a list of records may be cut into chunks that
+ * are parsed on their own, see {@link BnfParser#parseChunked(String, String, RecordSplitter)}.
+ * A split is safe when a record starts at the offset, so a record never
+ * continues past it. Cutting anywhere else gives a wrong tree, or fails.
+ */
+@FunctionalInterface
+public interface RecordSplitter {
+
+	/**
+	 * Checks whether the text may be cut at an offset
+	 * @param text The complete text
+	 * @param offset The offset of the first character after the cut
+	 */
+	boolean canSplit(CharSequence text, int offset);
+
+	/**
+	 * Cuts a text after a line break, for records that end with one and
+	 * don't hold one
+	 */
+	static RecordSplitter afterLineBreak() {
+		return (text, offset) -> text.charAt(offset - 1) == '\n';
+	}
+
+}
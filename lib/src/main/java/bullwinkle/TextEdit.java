@@ -0,0 +1,37 @@
+package bullwinkle;
+
+/**
+ * A change to a parsed text, used to reparse only the part of it that changed.
+ * The characters between <tt>start</tt> and <tt>oldEnd</tt> of the old text
+ * were replaced by the characters between <tt>start</tt> and <tt>newEnd</tt>
+ * of the new text.
+ * @param text The complete text after the change
+ * @param start The offset of the first character that changed
+ * @param oldEnd The offset after the replaced characters in the old text
+ * @param newEnd The offset after the inserted characters in the new text
+ */
+public record TextEdit(String text, int start, int oldEnd, int newEnd) {
+
+	public TextEdit {
+		if (start < 0 || oldEnd < start || newEnd < start || newEnd > text.length())
+			throw new IllegalArgumentException("Invalid edit [" + start + ", " + oldEnd + ") -> [" + start + ", " + newEnd + ")");
+	}
+
+	/**
+	 * Creates the edit that replaces the characters between two offsets of a text
+	 * @param oldText The text before the change
+	 * @param replacement The characters that replace them
+	 */
+	public static TextEdit replace(final String oldText, final int start, final int end, final String replacement) {
+		final var text = oldText.substring(0, start) + replacement + oldText.substring(end);
+		return new TextEdit(text, start, end, start + replacement.length());
+	}
+
+	/**
+	 * Gets the number of characters the text after the change moved
+	 */
+	public int delta() {
+		return newEnd - oldEnd;
+	}
+
+}
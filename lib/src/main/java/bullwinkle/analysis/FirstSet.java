@@ -0,0 +1,160 @@
+package bullwinkle.analysis;
+
+import bullwinkle.tokens.LiteralSetTerminalToken;
+import bullwinkle.tokens.NumberTerminalToken;
+import bullwinkle.tokens.TerminalToken;
+import bullwinkle.tokens.Token;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * The characters a rule or an alternative can start with, and whether it
+ * can match without consuming any input. Leading whitespace is not part of
+ * the set, the parser skips it before every token.
+ */
+public final class FirstSet {
+
+	// The flags of a set in a parser file
+	private static final int ANY_CHAR = 1, NULLABLE = 2, LEFT_RECURSIVE = 4;
+
+	private final BitSet chars = new BitSet();
+	// True when the start can't be predicted, for example for a regex
+	private boolean anyChar;
+	private boolean nullable;
+	// True when trying it can recurse without consuming input
+	private boolean leftRecursive;
+
+	public boolean isAnyChar() {
+		return anyChar;
+	}
+	public boolean isNullable() {
+		return nullable;
+	}
+	public boolean isLeftRecursive() {
+		return leftRecursive;
+	}
+
+	/**
+	 * Checks whether a character can be the first one matched
+	 */
+	public boolean contains(final char c) {
+		return anyChar || chars.get(c);
+	}
+
+	/**
+	 * Checks whether there can be a match when the next character of the
+	 * input is the given one
+	 */
+	public boolean admits(final char next) {
+		return nullable || leftRecursive || anyChar || chars.get(next);
+	}
+
+	/**
+	 * Checks whether there can be a match when there is no input left
+	 */
+	public boolean admitsEnd() {
+		return nullable || leftRecursive;
+	}
+
+	/**
+	 * Gets the characters in this set. Meaningless if {@link #isAnyChar()}.
+	 */
+	public BitSet getChars() {
+		return (BitSet) chars.clone();
+	}
+
+	/**
+	 * Checks whether this set and another one have a character in common
+	 */
+	public boolean intersects(final FirstSet other) {
+		if (anyChar && (other.anyChar || !other.chars.isEmpty())) return true;
+		if (other.anyChar && !chars.isEmpty()) return true;
+		return chars.intersects(other.chars);
+	}
+
+	boolean add(final char c) {
+		if (chars.get(c)) return false;
+		chars.set(c);
+		return true;
+	}
+
+	boolean addAnyChar() {
+		if (anyChar) return false;
+		anyChar = true;
+		return true;
+	}
+
+	void setLeftRecursive() {
+		leftRecursive = true;
+	}
+
+	boolean setNullable() {
+		if (nullable) return false;
+		nullable = true;
+		return true;
+	}
+
+	/**
+	 * Adds the characters a terminal token can start with. Literals add their
+	 * first character, any other kind of terminal adds any character.
+	 * @return true if this set changed
+	 */
+	boolean addTerminal(final Token token) {
+		if (token instanceof LiteralSetTerminalToken set) {
+			boolean changed = false;
+			for (final var literal : set.getLiterals()) {
+				if (!literal.isEmpty()) changed |= add(literal.charAt(0));
+			}
+			return changed;
+		}
+		if (token.getClass() == TerminalToken.class || token.getClass() == NumberTerminalToken.class) {
+			final var name = token.getName();
+			return !name.isEmpty() && add(name.charAt(0));
+		}
+		return addAnyChar();
+	}
+
+	/**
+	 * Adds the characters of another set to this one. Nullability is not copied.
+	 * @return true if this set changed
+	 */
+	boolean addChars(final FirstSet other) {
+		boolean changed = false;
+		if (other.anyChar) changed = addAnyChar();
+		final int before = chars.cardinality();
+		chars.or(other.chars);
+		return changed || chars.cardinality() != before;
+	}
+
+	void write(final DataOutput out) throws IOException {
+		out.writeByte((anyChar ? ANY_CHAR : 0) | (nullable ? NULLABLE : 0) | (leftRecursive ? LEFT_RECURSIVE : 0));
+		final long[] words = chars.toLongArray();
+		out.writeInt(words.length);
+		for (final long word : words) out.writeLong(word);
+	}
+
+	static FirstSet read(final DataInput in) throws IOException {
+		final var set = new FirstSet();
+		final int flags = in.readByte();
+		set.anyChar = (flags & ANY_CHAR) != 0;
+		set.nullable = (flags & NULLABLE) != 0;
+		set.leftRecursive = (flags & LEFT_RECURSIVE) != 0;
+		final long[] words = new long[in.readInt()];
+		for (int i = 0; i < words.length; i++) words[i] = in.readLong();
+		set.chars.or(BitSet.valueOf(words));
+		return set;
+	}
+
+	@Override
+	public String toString() {
+		final var out = new StringBuilder("{");
+		if (anyChar) out.append("*");
+		chars.stream().forEach(c -> out.append(out.length() > 1 ? " " : "").appendCodePoint(c));
+		if (nullable) out.append(out.length() > 1 ? " " : "").append("ε");
+		return out.append("}").toString();
+	}
+
+}
@@ -0,0 +1,192 @@
+package bullwinkle.analysis;
+
+import bullwinkle.BnfRule;
+import bullwinkle.tokens.*;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Computes the FIRST and nullable sets of the rules of a grammar, and of
+ * each of their alternatives. The parser uses them to skip alternatives
+ * that can't match the next character of the input.
+ * The sets are conservative: when the start of a token can't be predicted
+ * (a regex, an undefined rule, a custom token type) any character is
+ * assumed to match.
+ */
+public final class GrammarAnalysis {
+
+	private final Map<BnfRule, FirstSet> ruleSets = new IdentityHashMap<>();
+	private final Map<BnfRule, FirstSet[]> alternativeSets = new IdentityHashMap<>();
+	private final boolean partialParsing;
+
+	private GrammarAnalysis(final boolean partialParsing) {
+		this.partialParsing = partialParsing;
+	}
+
+	/**
+	 * Analyzes a grammar. The non-terminal tokens in the rules must already
+	 * be resolved.
+	 * @param rules The rules of the grammar
+	 * @param partialParsing Whether the input can contain non-terminal tokens
+	 * @return The analysis
+	 */
+	public static GrammarAnalysis analyze(final List<BnfRule> rules, final boolean partialParsing) {
+		final var analysis = new GrammarAnalysis(partialParsing);
+		for (final var rule : rules) {
+			if (analysis.ruleSets.containsKey(rule)) continue;
+			analysis.ruleSets.put(rule, new FirstSet());
+			final var alternatives = new FirstSet[rule.getAlternatives().size()];
+			for (int i = 0; i < alternatives.length; i++) alternatives[i] = new FirstSet();
+			analysis.alternativeSets.put(rule, alternatives);
+		}
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (final var entry : analysis.alternativeSets.entrySet()) {
+				final var ruleSet = analysis.ruleSets.get(entry.getKey());
+				final var alternatives = entry.getKey().getAlternatives();
+				final var sets = entry.getValue();
+				for (int i = 0; i < sets.length; i++) {
+					changed |= analysis.computeAlternative(sets[i], alternatives.get(i));
+					changed |= ruleSet.addChars(sets[i]);
+					if (sets[i].isNullable()) changed |= ruleSet.setNullable();
+				}
+			}
+		}
+		analysis.markLeftRecursion();
+		return analysis;
+	}
+
+	/**
+	 * The parser gives up on left recursion with a MaximumRecursionReached error
+	 * instead of failing. Alternatives that can lead into it are never skipped,
+	 * so that error stays the same.
+	 */
+	private void markLeftRecursion() {
+		final var leftCorners = new IdentityHashMap<BnfRule, Set<BnfRule>>();
+		for (final var rule : alternativeSets.keySet()) {
+			final var corners = Collections.<BnfRule>newSetFromMap(new IdentityHashMap<>());
+			for (final var alternative : rule.getAlternatives()) corners.addAll(leadingRules(alternative));
+			leftCorners.put(rule, corners);
+		}
+
+		final var recursive = Collections.<BnfRule>newSetFromMap(new IdentityHashMap<>());
+		for (final var rule : leftCorners.keySet()) {
+			if (reachable(rule, leftCorners).contains(rule)) recursive.add(rule);
+		}
+		if (recursive.isEmpty()) return;
+
+		for (final var entry : alternativeSets.entrySet()) {
+			final var alternatives = entry.getKey().getAlternatives();
+			for (int i = 0; i < alternatives.size(); i++) {
+				for (final var leading : leadingRules(alternatives.get(i))) {
+					if (recursive.contains(leading) || !Collections.disjoint(reachable(leading, leftCorners), recursive)) {
+						entry.getValue()[i].setLeftRecursive();
+						ruleSets.get(entry.getKey()).setLeftRecursive();
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	// The rules the parser can descend into before the alternative consumes input
+	private List<BnfRule> leadingRules(final TokenString alternative) {
+		final var out = new ArrayList<BnfRule>();
+		for (final var token : alternative) {
+			if (!(token instanceof NonTerminalToken nonTerminal) || nonTerminal.getRule() == null) break;
+			out.add(nonTerminal.getRule());
+			if (!isNullable(nonTerminal.getRule())) break;
+		}
+		return out;
+	}
+
+	private static Set<BnfRule> reachable(final BnfRule from, final Map<BnfRule, Set<BnfRule>> edges) {
+		final var seen = Collections.<BnfRule>newSetFromMap(new IdentityHashMap<>());
+		final var todo = new ArrayDeque<>(edges.getOrDefault(from, Set.of()));
+		while (!todo.isEmpty()) {
+			final var rule = todo.pop();
+			if (seen.add(rule)) todo.addAll(edges.getOrDefault(rule, Set.of()));
+		}
+		return seen;
+	}
+
+	private boolean computeAlternative(final FirstSet set, final TokenString alternative) {
+		boolean changed = false;
+		for (final var token : alternative) {
+			if (token instanceof EpsilonTerminalToken) {
+				// The parser stops reading the alternative at an epsilon
+				return set.setNullable() | changed;
+			}
+			if (token instanceof NonTerminalToken nonTerminal) {
+				if (partialParsing) changed |= set.add('<');
+				final var ruleSet = nonTerminal.getRule() == null ? null : ruleSets.get(nonTerminal.getRule());
+				if (ruleSet == null) return set.addAnyChar() | changed;
+				changed |= set.addChars(ruleSet);
+				if (!ruleSet.isNullable()) return changed;
+				continue;
+			}
+			return set.addTerminal(token) | changed;
+		}
+		return set.setNullable() | changed;
+	}
+
+	/**
+	 * Writes the sets of some rules, so {@link #read(DataInput, List, boolean)}
+	 * can restore them without analyzing the grammar again
+	 * @param rules The rules, a rule that was not analyzed is written without sets
+	 */
+	public void write(final DataOutput out, final List<BnfRule> rules) throws IOException {
+		for (final var rule : rules) {
+			final var sets = alternativeSets.get(rule);
+			out.writeBoolean(sets != null);
+			if (sets == null) continue;
+			ruleSets.get(rule).write(out);
+			out.writeInt(sets.length);
+			for (final var set : sets) set.write(out);
+		}
+	}
+
+	/**
+	 * Reads the sets written by {@link #write(DataOutput, List)}
+	 * @param rules The same rules, in the same order
+	 */
+	public static GrammarAnalysis read(final DataInput in, final List<BnfRule> rules, final boolean partialParsing) throws IOException {
+		final var analysis = new GrammarAnalysis(partialParsing);
+		for (final var rule : rules) {
+			if (!in.readBoolean()) continue;
+			analysis.ruleSets.put(rule, FirstSet.read(in));
+			final var sets = new FirstSet[in.readInt()];
+			for (int i = 0; i < sets.length; i++) sets[i] = FirstSet.read(in);
+			analysis.alternativeSets.put(rule, sets);
+		}
+		return analysis;
+	}
+
+	/**
+	 * Gets the FIRST set of a rule
+	 * @return The set, or <tt>null</tt> if the rule was not analyzed
+	 */
+	public FirstSet first(final BnfRule rule) {
+		return ruleSets.get(rule);
+	}
+
+	/**
+	 * Gets the FIRST sets of the alternatives of a rule, in the order of
+	 * {@link BnfRule#getAlternatives()}
+	 * @return The sets, or <tt>null</tt> if the rule was not analyzed
+	 */
+	public FirstSet[] alternatives(final BnfRule rule) {
+		return alternativeSets.get(rule);
+	}
+
+	public boolean isNullable(final BnfRule rule) {
+		final var set = ruleSets.get(rule);
+		return set != null && set.isNullable();
+	}
+
+}
@@ -0,0 +1,245 @@
+package bullwinkle.analysis;
+
+import bullwinkle.BnfRule;
+import bullwinkle.tokens.*;
+
+import java.util.*;
+
+/**
+ * The LL(1) parse table of a grammar. For every rule it tells which
+ * alternative to use given the next character of the input. Lookahead is
+ * one character, after skipping whitespace, so two alternatives conflict
+ * when they can start with the same character. The alternatives are ordered
+ * like they are for the backtracking parser, so an alternative that matches
+ * the empty string must come last, and read an epsilon itself: the
+ * backtracking parser fails a rule that consumes nothing otherwise. A grammar
+ * without conflicts can be parsed without backtracking, and gives the same
+ * trees.
+ */
+public final class LlTable {
+
+	private static final int ASCII = 128;
+	private static final int NONE = -1;
+
+	private final Map<BnfRule, Row> rows = new IdentityHashMap<>();
+	private final List<String> conflicts = new ArrayList<>();
+
+	private LlTable() {}
+
+	/**
+	 * Builds the table for the rules that can be reached from the start rule
+	 * @param startRule The start rule of the grammar
+	 * @param analysis The FIRST sets of the grammar
+	 * @param partialParsing Whether the input can contain non-terminal tokens
+	 * @return The table, check {@link #isLl1()} before using it
+	 */
+	public static LlTable build(final BnfRule startRule, final GrammarAnalysis analysis, final boolean partialParsing) {
+		final var table = new LlTable();
+		if (partialParsing) {
+			table.conflicts.add("Partial parsing lets any non-terminal start with '<'");
+			return table;
+		}
+
+		final var rules = reachableRules(startRule, table.conflicts);
+		final var follow = followSets(rules, startRule, analysis);
+		for (final var rule : rules) {
+			table.rows.put(rule, table.buildRow(rule, analysis, follow.get(rule)));
+		}
+		return table;
+	}
+
+	/**
+	 * Checks whether the grammar is LL(1)
+	 */
+	public boolean isLl1() {
+		return conflicts.isEmpty();
+	}
+
+	/**
+	 * Gets a description of every conflict that keeps the grammar from being LL(1)
+	 */
+	public List<String> getConflicts() {
+		return Collections.unmodifiableList(conflicts);
+	}
+
+	/**
+	 * Gets the alternative to use for a rule
+	 * @param rule The rule
+	 * @param next The next character of the input, or -1 at the end of the input
+	 * @return The alternative, or <tt>null</tt> if no alternative can match
+	 */
+	public TokenString predict(final BnfRule rule, final int next) {
+		final var row = rows.get(rule);
+		if (row == null) return null;
+		int index = NONE;
+		if (next >= 0 && next < ASCII) index = row.ascii[next];
+		else if (next >= ASCII) index = row.other.getOrDefault((char) next, NONE);
+		if (index == NONE) index = row.fallback;
+		return index == NONE ? null : row.alternatives.get(index);
+	}
+
+	private Row buildRow(final BnfRule rule, final GrammarAnalysis analysis, final Follow follow) {
+		final var row = new Row(rule.getAlternatives());
+		final var sets = analysis.alternatives(rule);
+		if (analysis.first(rule).isLeftRecursive()) {
+			conflicts.add(rule.getLeftHandSide() + " is left-recursive");
+		}
+
+		for (int i = 0; i < sets.length; i++) {
+			final var set = sets[i];
+			if (set.isAnyChar() && sets.length > 1) {
+				conflicts.add(rule.getLeftHandSide() + ": can't predict the start of alternative '" + row.alternatives.get(i) + "'");
+				continue;
+			}
+			if (set.isNullable() && row.alternatives.get(i).stream().noneMatch(t -> t instanceof EpsilonTerminalToken)) {
+				// The backtracking parser fails a rule that consumes nothing without reading an epsilon
+				conflicts.add(rule.getLeftHandSide() + ": alternative '" + row.alternatives.get(i)
+					+ "' only matches the empty string through its rules");
+			}
+			if (set.isNullable()) {
+				// The backtracking parser takes the first alternative that matches, and a
+				// nullable one always does, so the alternatives after it are never tried
+				if (i < sets.length - 1) {
+					conflicts.add(rule.getLeftHandSide() + ": alternative '" + row.alternatives.get(i)
+						+ "' matches the empty string before the alternatives after it");
+				}
+				if (row.fallback != NONE) {
+					conflicts.add(rule.getLeftHandSide() + ": alternatives '" + row.alternatives.get(row.fallback)
+						+ "' and '" + row.alternatives.get(i) + "' both match the empty string");
+				}
+				row.fallback = i;
+			}
+			final int alternative = i;
+			set.getChars().stream().forEach(c -> setEntry(row, rule, (char) c, alternative));
+		}
+
+		// A rule with a single alternative always uses it, matching its tokens decides
+		if (sets.length == 1 && row.fallback == NONE) return row.withFallback(0);
+
+		if (row.fallback != NONE) {
+			// The empty alternative is picked when the next character does not start
+			// another one, that character then has to follow the rule
+			for (int i = 0; i < sets.length; i++) {
+				if (i == row.fallback) continue;
+				if (follow.chars.isAnyChar() || sets[i].intersects(follow.chars)) {
+					conflicts.add(rule.getLeftHandSide() + ": alternative '" + row.alternatives.get(i)
+						+ "' starts with a character that can follow the rule");
+				}
+			}
+		}
+		return row;
+	}
+
+	private void setEntry(final Row row, final BnfRule rule, final char c, final int alternative) {
+		final int existing = c < ASCII ? row.ascii[c] : row.other.getOrDefault(c, NONE);
+		if (existing != NONE && existing != alternative) {
+			conflicts.add(rule.getLeftHandSide() + ": alternatives '" + row.alternatives.get(existing)
+				+ "' and '" + row.alternatives.get(alternative) + "' can both start with '" + c + "'");
+			return;
+		}
+		if (c < ASCII) row.ascii[c] = alternative;
+		else row.other.put(c, alternative);
+	}
+
+	private static List<BnfRule> reachableRules(final BnfRule startRule, final List<String> conflicts) {
+		final var seen = Collections.<BnfRule>newSetFromMap(new IdentityHashMap<>());
+		final var out = new ArrayList<BnfRule>();
+		final var todo = new ArrayDeque<BnfRule>();
+		todo.add(startRule);
+		while (!todo.isEmpty()) {
+			final var rule = todo.pop();
+			if (!seen.add(rule)) continue;
+			out.add(rule);
+			for (final var alternative : rule.getAlternatives()) {
+				for (final var token : alternative) {
+					if (!(token instanceof NonTerminalToken nonTerminal)) continue;
+					if (nonTerminal.getRule() == null) conflicts.add("Cannot find rule for token " + token);
+					else todo.add(nonTerminal.getRule());
+				}
+			}
+		}
+		return out;
+	}
+
+	private static Map<BnfRule, Follow> followSets(final List<BnfRule> rules, final BnfRule startRule,
+												   final GrammarAnalysis analysis) {
+		final var follow = new IdentityHashMap<BnfRule, Follow>();
+		for (final var rule : rules) follow.put(rule, new Follow());
+		follow.get(startRule).end = true;
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (final var rule : rules) {
+				for (final var alternative : rule.getAlternatives()) {
+					final var tokens = new ArrayList<Token>(alternative);
+					for (int i = 0; i < tokens.size(); i++) {
+						if (tokens.get(i) instanceof EpsilonTerminalToken) break;
+						if (!(tokens.get(i) instanceof NonTerminalToken nonTerminal)) continue;
+						final var target = follow.get(nonTerminal.getRule());
+						if (target == null) continue;
+
+						final var rest = firstOfSequence(tokens, i + 1, analysis);
+						changed |= target.chars.addChars(rest);
+						if (rest.isNullable()) changed |= target.addAll(follow.get(rule));
+					}
+				}
+			}
+		}
+		return follow;
+	}
+
+	private static FirstSet firstOfSequence(final List<Token> tokens, final int from, final GrammarAnalysis analysis) {
+		final var set = new FirstSet();
+		for (int i = from; i < tokens.size(); i++) {
+			final var token = tokens.get(i);
+			if (token instanceof EpsilonTerminalToken) break;
+			if (token instanceof NonTerminalToken nonTerminal) {
+				final var ruleSet = nonTerminal.getRule() == null ? null : analysis.first(nonTerminal.getRule());
+				if (ruleSet == null) {
+					set.addAnyChar();
+					return set;
+				}
+				set.addChars(ruleSet);
+				if (!ruleSet.isNullable()) return set;
+				continue;
+			}
+			set.addTerminal(token);
+			return set;
+		}
+		set.setNullable();
+		return set;
+	}
+
+	private static final class Follow {
+		final FirstSet chars = new FirstSet();
+		boolean end;
+
+		boolean addAll(final Follow other) {
+			boolean changed = chars.addChars(other.chars);
+			if (other.end && !end) {
+				end = true;
+				changed = true;
+			}
+			return changed;
+		}
+	}
+
+	private static final class Row {
+		final List<TokenString> alternatives;
+		final int[] ascii = new int[ASCII];
+		final Map<Character, Integer> other = new HashMap<>();
+		int fallback = NONE;
+
+		Row(final List<TokenString> alternatives) {
+			this.alternatives = alternatives;
+			Arrays.fill(ascii, NONE);
+		}
+
+		Row withFallback(final int alternative) {
+			fallback = alternative;
+			return this;
+		}
+	}
+
+}
@@ -0,0 +1,639 @@
+package bullwinkle.engine;
+
+import bullwinkle.BnfRule;
+import bullwinkle.ParseNodeVisitor;
+import bullwinkle.ParseTracer;
+import bullwinkle.analysis.FirstSet;
+import bullwinkle.analysis.GrammarAnalysis;
+import bullwinkle.error.MaximumRecursionReached;
+import bullwinkle.error.MissingRule;
+import bullwinkle.error.ParsingFailed;
+import bullwinkle.error.VisitException;
+import bullwinkle.nodes.Node;
+import bullwinkle.tokens.EpsilonTerminalToken;
+import bullwinkle.tokens.NonTerminalToken;
+import bullwinkle.tokens.RegexTerminalToken;
+import bullwinkle.tokens.TerminalToken;
+import bullwinkle.tokens.Token;
+import bullwinkle.util.MemoTable;
+import bullwinkle.util.ParseInput;
+import bullwinkle.util.StreamingInput;
+import bullwinkle.util.TreeWalker;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static bullwinkle.ParseTracer.Failure.*;
+import static bullwinkle.engine.Nodes.*;
+import static bullwinkle.util.Functions.orThrow;
+
+/**
+ * The recursive descent parser that tries the alternatives of a rule in order,
+ * and takes the first one that matches. The rules being parsed are kept on a
+ * frame stack of arrays instead of the call stack, so the depth of the input
+ * is only limited by the maximum number of recursion steps.
+ * <p>
+ * The top-level rule must consume the complete input. When one of its
+ * alternatives leaves input, the next alternative is tried. Any other rule
+ * fails when it matches without consuming input, unless it read an epsilon.
+ */
+public final class BacktrackingParser implements ParseEngine {
+
+	// The states of the parse loop
+	private static final int NEXT_ALTERNATIVE = 0, NEXT_TOKEN = 1, FINISH = 2, RESUME = 3;
+
+	// The layout of a frame in the int stack
+	private static final int START = 0, NEXT = 1, POSITION = 2, ALTERNATIVE = 3, TOKEN = 4, FLAGS = 5, FRAME = 6;
+	private static final int WRONG_SYMBOL = 1, READ_EPSILON = 2;
+
+	private final BnfRule startRule;
+	private final Map<String, BnfRule> rulesByName;
+	private final ParseTracer tracer;
+	private final int maxRecursionSteps;
+	private final boolean partialParsing;
+	private final int memoTableSize;
+	private final GrammarAnalysis analysis;
+	// Tries the alternatives of the start rule at the same time, or null
+	private final ForkJoinPool pool;
+	// The tokens of the alternatives of every rule the parser can reach
+	private final Map<BnfRule, Token[][]> alternativeTokens;
+
+	public BacktrackingParser(final BnfRule startRule, final Map<String, BnfRule> rulesByName,
+							  final ParseTracer tracer, final int maxRecursionSteps, final boolean partialParsing,
+							  final int memoTableSize, final GrammarAnalysis analysis) {
+		this(startRule, rulesByName, tracer, maxRecursionSteps, partialParsing, memoTableSize, analysis, null);
+	}
+
+	/**
+	 * @param rulesByName Used to find the rules of non-terminals that were not resolved
+	 * @param memoTableSize The maximum number of (rule, offset) outcomes remembered
+	 *   during a single parse. Use 0 to disable memoization.
+	 * @param analysis The FIRST sets of the grammar, used to skip alternatives that can't
+	 *   match the next character. Use <tt>null</tt> to try every alternative.
+	 * @param pool Tries the alternatives of the start rule at the same time. Use
+	 *   <tt>null</tt> to try them one after the other. The tracer must then be thread-safe.
+	 * The parser keeps the tokens of the rules, they must not change afterwards.
+	 */
+	public BacktrackingParser(final BnfRule startRule, final Map<String, BnfRule> rulesByName,
+							  final ParseTracer tracer, final int maxRecursionSteps, final boolean partialParsing,
+							  final int memoTableSize, final GrammarAnalysis analysis, final ForkJoinPool pool) {
+		this.startRule = startRule;
+		this.rulesByName = rulesByName;
+		this.tracer = tracer;
+		this.maxRecursionSteps = maxRecursionSteps;
+		this.partialParsing = partialParsing;
+		this.memoTableSize = memoTableSize;
+		this.analysis = analysis;
+		this.pool = pool;
+		this.alternativeTokens = alternativeTokens(startRule, rulesByName);
+	}
+
+	private static Map<BnfRule, Token[][]> alternativeTokens(final BnfRule startRule, final Map<String, BnfRule> rulesByName) {
+		final var tokens = new IdentityHashMap<BnfRule, Token[][]>();
+		final var todo = new ArrayDeque<>(rulesByName.values());
+		todo.push(startRule);
+		while (!todo.isEmpty()) {
+			final var rule = todo.pop();
+			if (tokens.containsKey(rule)) continue;
+			final var alternatives = rule.getAlternativeTokens();
+			tokens.put(rule, alternatives);
+			for (final var alternative : alternatives) {
+				for (final var token : alternative) {
+					if (token instanceof NonTerminalToken nonTerminal && nonTerminal.getRule() != null) todo.push(nonTerminal.getRule());
+				}
+			}
+		}
+		return tokens;
+	}
+
+	private Token[][] tokensOf(final BnfRule rule) {
+		final var known = alternativeTokens.get(rule);
+		return known != null ? known : rule.getAlternativeTokens();
+	}
+
+	public int getMaxRecursionSteps() {
+		return maxRecursionSteps;
+	}
+	public boolean isPartialParsing() {
+		return partialParsing;
+	}
+	public int getMemoTableSize() {
+		return memoTableSize;
+	}
+
+	@Override
+	public Node parse(final ParseInput input) throws ParsingFailed {
+		// A streaming input loads its text while it is parsed, it can't be shared by runs
+		if (pool != null && input.keepsText() && tokensOf(startRule).length > 1)
+			return parseAlternatives(input);
+		return orThrow(new Run(input, 0, null).parse(startRule, 0), ParsingFailed::new);
+	}
+
+	/**
+	 * Tries every alternative of the start rule in its own run on the pool. The
+	 * first alternative that matches wins, like when they are tried one after
+	 * the other, so the outcomes are taken in order. Once an alternative
+	 * matched, the runs of the alternatives after it stop.
+	 */
+	private Node parseAlternatives(final ParseInput input) throws ParsingFailed {
+		final int count = tokensOf(startRule).length;
+		// The first alternative known to match
+		final var matched = new AtomicInteger(count);
+		final var runs = new ArrayList<ForkJoinTask<Node>>(count);
+		for (int i = 0; i < count; i++) {
+			final int alternative = i;
+			runs.add(pool.submit(() -> {
+				if (matched.get() < alternative) return null;
+				final var run = new Run(input, 0, null);
+				run.alternative = alternative;
+				run.stopped = () -> matched.get() < alternative;
+				final var node = run.parse(startRule, 0);
+				if (node != null) matched.accumulateAndGet(alternative, Math::min);
+				return node;
+			}));
+		}
+		for (int i = 0; i < count; i++) {
+			// Rethrows the exception of the run, as if the alternatives were tried in order
+			final var node = runs.get(i).join();
+			if (node == null) continue;
+			for (final var later : runs.subList(i + 1, count)) later.cancel(false);
+			return node;
+		}
+		throw new ParsingFailed();
+	}
+
+	/**
+	 * Parses the complete input, and sends its nodes to a visitor in the order
+	 * of {@link Node#prefixAccept(ParseNodeVisitor)} instead of building a tree.
+	 * The nodes of a rule are sent once the rule can no longer backtrack, that
+	 * is once it and all rules it is part of are trying their last alternative.
+	 * Until then they are kept, so memory holds the rules being parsed and the
+	 * nodes that may still be undone. When the start rule is a list of records,
+	 * like <tt>&lt;S&gt; := &lt;R&gt; &lt;S&gt; | &lt;R&gt;</tt>, the records
+	 * are parsed one after the other and sent once they matched.
+	 * <p>
+	 * The nodes sent to the visitor don't have their children. When parsing
+	 * fails, the visitor may already have received part of the nodes.
+	 */
+	public void parse(final ParseInput input, final ParseNodeVisitor visitor) throws ParsingFailed, VisitException {
+		try {
+			final var record = getRecordRule();
+			if (record == null) {
+				final var run = new Run(input, 0, visitor);
+				if (run.parse(startRule, 0) == null) throw new ParsingFailed();
+				run.sendResult();
+				return;
+			}
+
+			int pos = 0, records = 0;
+			do {
+				visitor.visit(ruleNode(startRule));
+				records++;
+				// The record rule is tried below the start rule, so it gets the same level
+				final var run = new Run(input, 1, visitor);
+				if (run.parse(record, pos) == null) throw new ParsingFailed();
+				if (run.resultEnd == pos) throw new ParsingFailed("Record " + record.getLeftHandSide() + " matched no input at offset " + pos);
+				run.sendResult();
+				pos = run.resultEnd;
+			} while (!input.isEnd(input.skipWhitespace(pos)));
+			for (int i = 0; i < records; i++) visitor.pop();
+		} catch (VisitFailed e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Parses a streaming input. When the start rule is a list of records, like
+	 * <tt>&lt;S&gt; := &lt;R&gt; &lt;S&gt; | &lt;R&gt;</tt>, the records are
+	 * parsed one after the other, and the input of a record is released once it
+	 * matched. Memory then only holds the record being parsed, and the number of
+	 * records is not limited by the maximum number of recursion steps. The tree
+	 * is the same as when the input is parsed as a string. Any other grammar
+	 * loads the complete input.
+	 */
+	public Node parse(final StreamingInput stream) throws ParsingFailed {
+		if (getRecordRule() == null) {
+			stream.loadAll();
+			return parse(new ParseInput(stream));
+		}
+		final var records = new ArrayList<Node>();
+		parseRecords(stream, records::add);
+		return recordList(records);
+	}
+
+	/**
+	 * Parses a streaming input whose start rule is a list of records, and
+	 * hands every record to a consumer once it matched, instead of building
+	 * the list. Memory then holds the record being parsed and the records the
+	 * consumer keeps, whatever the length of the input.
+	 * @throws IllegalArgumentException If the start rule is not a list of records
+	 */
+	public void parseRecords(final StreamingInput stream, final Consumer<Node> consumer) throws ParsingFailed {
+		final var record = getRecordRule();
+		if (record == null) throw new IllegalArgumentException("The start rule is not a list of records");
+
+		final var input = new ParseInput(stream);
+		int pos = 0;
+		do {
+			// The record rule is tried below the start rule, so it gets the same level
+			final var run = new Run(input, 1, null);
+			final var node = run.parse(record, pos);
+			if (node == null) throw new ParsingFailed();
+			if (run.resultEnd == pos) throw new ParsingFailed("Record " + record.getLeftHandSide() + " matched no input at offset " + pos);
+			consumer.accept(node);
+			pos = run.resultEnd;
+			stream.release(pos);
+		} while (!input.isEnd(input.skipWhitespace(pos)));
+	}
+
+	/**
+	 * Parses the records between two offsets of the input, one after the other,
+	 * like they are parsed below the start rule
+	 * @param end The offset where the last record must end, not counting whitespace
+	 * @throws ParsingFailed When a record fails, or does not end before that offset
+	 */
+	public List<Node> parseRecords(final ParseInput input, final BnfRule record, final int start, final int end) throws ParsingFailed {
+		final var records = new ArrayList<Node>();
+		int pos = start;
+		do {
+			final var run = new Run(input, 1, null);
+			final var node = run.parse(record, pos);
+			if (node == null) throw new ParsingFailed();
+			if (run.resultEnd == pos) throw new ParsingFailed("Record " + record.getLeftHandSide() + " matched no input at offset " + pos);
+			if (run.resultEnd > end) throw new ParsingFailed("Record " + record.getLeftHandSide() + " at offset " + pos + " continues after offset " + end);
+			records.add(node);
+			pos = run.resultEnd;
+		} while (input.skipWhitespace(pos) < end);
+		return records;
+	}
+
+	/**
+	 * Builds the tree the start rule <tt>&lt;S&gt; := &lt;R&gt; &lt;S&gt; | &lt;R&gt;</tt>
+	 * has for a list of records
+	 */
+	public Node recordList(final List<Node> records) {
+		Node list = null;
+		for (int i = records.size() - 1; i >= 0; i--) {
+			final var node = ruleNode(startRule);
+			node.addChild(records.get(i));
+			if (list != null) node.addChild(list);
+			list = node;
+		}
+		return list;
+	}
+
+	/**
+	 * Gets the rule of a record when the start rule is a list of records, like
+	 * <tt>&lt;S&gt; := &lt;R&gt; &lt;S&gt; | &lt;R&gt;</tt>
+	 * @return The rule <tt>R</tt>, or <tt>null</tt> if the start rule has another shape
+	 */
+	public BnfRule getRecordRule() {
+		final var alternatives = tokensOf(startRule);
+		if (alternatives.length != 2 || alternatives[0].length != 2 || alternatives[1].length != 1) return null;
+		if (!(alternatives[0][0] instanceof NonTerminalToken first && alternatives[0][1] instanceof NonTerminalToken rest
+			&& alternatives[1][0] instanceof NonTerminalToken last)) return null;
+		final var record = first.getRule();
+		if (record == null || record == startRule || rest.getRule() != startRule || last.getRule() != record) return null;
+		return record;
+	}
+
+	/**
+	 * Parses a single rule at some offset, as it would be parsed below the
+	 * start rule
+	 * @param end The offset where the match of the rule must end
+	 * @return The node of the rule, or <tt>null</tt> if it does not match up to that offset
+	 */
+	public Node parse(final ParseInput input, final BnfRule rule, final int offset, final int end) {
+		final var run = new Run(input, 1, null);
+		final var node = run.parse(rule, offset);
+		return node != null && run.resultEnd == end ? node : null;
+	}
+
+	/**
+	 * The state of a single parse
+	 */
+	private final class Run {
+		private final ParseInput input;
+		private final MemoTable memo;
+		// The recursion level of the first frame
+		private final int base;
+		// Receives the nodes instead of the tree, or null
+		private final ParseNodeVisitor events;
+		// The number of frames, from the bottom, whose node was sent to events
+		private int committed;
+
+		// The frame stack, the frame of level base + n is at index n
+		private BnfRule[] rules = new BnfRule[16];
+		private Token[][][] alternatives = new Token[16][][];
+		private FirstSet[][] firsts = new FirstSet[16][];
+		private Node[] nodes = new Node[16];
+		private int[] frames = new int[16 * FRAME];
+		private int top = -1;
+
+		// The outcome of the rule that finished last, and whether its node was sent
+		private Node result;
+		private int resultEnd;
+		private boolean resultSent;
+
+		// The only alternative tried for the first frame, or -1 for all of them
+		private int alternative = -1;
+		// Tells when the outcome of the run is no longer needed, or null
+		private BooleanSupplier stopped;
+		private int steps;
+
+		Run(final ParseInput input, final int base, final ParseNodeVisitor events) {
+			this.input = input;
+			this.memo = memoTableSize > 0 ? new MemoTable(memoTableSize) : null;
+			this.base = base;
+			this.events = events;
+		}
+
+		/**
+		 * Parses a rule at some offset, {@link #resultEnd} is then the end of its match
+		 * @return The node of the rule, or <tt>null</tt> if it did not match
+		 */
+		Node parse(final BnfRule rule, final int offset) {
+			try {
+				int state = enter(rule, offset);
+				while (true) {
+					if (stopped != null && (++steps & 0x3FF) == 0 && stopped.getAsBoolean()) return null;
+					switch (state) {
+						case NEXT_ALTERNATIVE -> state = nextAlternative();
+						case NEXT_TOKEN -> state = nextToken();
+						case FINISH -> {
+							finish();
+							state = RESUME;
+						}
+						case RESUME -> {
+							if (top < 0) return result;
+							state = resume();
+						}
+						default -> throw new IllegalStateException("Unknown state " + state);
+					}
+				}
+			} finally {
+				RegexTerminalToken.releaseInput();
+			}
+		}
+
+		/**
+		 * Starts parsing a rule on top of the current frame, the memoized
+		 * outcome is used when there is one
+		 */
+		private int enter(final BnfRule rule, final int offset) {
+			final int depth = top + 1, level = base + depth;
+			// The top-level rule has its own success condition, so it is never memoized
+			if (memo != null && level > 0) {
+				final var entry = memo.lookup(rule, offset);
+				if (entry != null) {
+					result = entry.node();
+					resultEnd = offset + entry.consumed();
+					resultSent = false;
+					return RESUME;
+				}
+			}
+			if (level > maxRecursionSteps)
+				throw new MaximumRecursionReached(level);
+
+			if (depth == rules.length) {
+				rules = Arrays.copyOf(rules, depth * 2);
+				alternatives = Arrays.copyOf(alternatives, depth * 2);
+				firsts = Arrays.copyOf(firsts, depth * 2);
+				nodes = Arrays.copyOf(nodes, depth * 2);
+				frames = Arrays.copyOf(frames, depth * 2 * FRAME);
+			}
+			top = depth;
+			rules[depth] = rule;
+			alternatives[depth] = tokensOf(rule);
+			firsts[depth] = predictions(rule, alternatives[depth].length);
+			nodes[depth] = null;
+			final int frame = depth * FRAME;
+			frames[frame + START] = offset;
+			frames[frame + NEXT] = input.skipWhitespace(offset);
+			frames[frame + POSITION] = offset;
+			frames[frame + ALTERNATIVE] = depth == 0 && alternative >= 0 ? alternative - 1 : -1;
+			frames[frame + TOKEN] = 0;
+			frames[frame + FLAGS] = WRONG_SYMBOL;
+			tracer.enterRule(rule, input, offset, level);
+			return NEXT_ALTERNATIVE;
+		}
+
+		private int nextAlternative() {
+			final int frame = top * FRAME;
+			final var rule = rules[top];
+			final int count = alternatives[top].length;
+			final var predictions = firsts[top];
+			final int next = frames[frame + NEXT];
+			while (true) {
+				final int index = ++frames[frame + ALTERNATIVE];
+				if (index >= count || top == 0 && alternative >= 0 && index > alternative) return FINISH;
+
+				if (predictions != null && !(input.isEnd(next) ? predictions[index].admitsEnd() : predictions[index].admits(input.charAt(next)))) {
+					// The alternative can't start with the next character: NO MATCH
+					frames[frame + FLAGS] |= WRONG_SYMBOL;
+					nodes[top] = null;
+					tracer.skipAlternative(rule, rule.getAlternatives().get(index), next, base + top);
+					continue;
+				}
+				tracer.tryAlternative(rule, rule.getAlternatives().get(index), base + top);
+				nodes[top] = ruleNode(rule);
+				if (events != null && top == committed && index == count - 1) {
+					// The rule and the rules below it can no longer backtrack
+					visit(nodes[top]);
+					committed++;
+				}
+				frames[frame + POSITION] = frames[frame + START];
+				frames[frame + TOKEN] = 0;
+				frames[frame + FLAGS] &= ~WRONG_SYMBOL;
+				return NEXT_TOKEN;
+			}
+		}
+
+		private int nextToken() {
+			final int frame = top * FRAME;
+			final var rule = rules[top];
+			final int index = frames[frame + ALTERNATIVE];
+			final var tokens = alternatives[top][index];
+			int pos = frames[frame + POSITION];
+			int i = frames[frame + TOKEN];
+			while (i < tokens.length) {
+				pos = input.skipWhitespace(pos);
+				final var token = tokens[i++];
+				if (token instanceof TerminalToken) {
+					if (token instanceof EpsilonTerminalToken) {
+						// Epsilon always works
+						addChild(epsilonNode(pos));
+						frames[frame + FLAGS] |= READ_EPSILON;
+						break;
+					}
+					// Rule expects a token, and the input has none or another: NO MATCH
+					final int length = input.isEnd(pos) ? 0 : input.match(token, pos);
+					if (length <= 0) return failAlternative(token, pos);
+
+					tracer.matchTerminal(token, input, pos, length, base + top);
+					// In the case of a regex, this creates children with each capture block
+					addChild(terminalNode(token, input, pos, pos + length));
+					pos += length;
+					continue;
+				}
+
+				// Non-terminal token: parse its rule in a new frame
+				final String name = token.toString();
+				if (partialParsing && input.startsWith(name, pos)) {
+					addChild(symbolNode(input, pos, name.length()));
+					pos += name.length();
+					continue;
+				}
+				BnfRule target = ((NonTerminalToken) token).getRule();
+				if (target == null) target = rulesByName.get(token.getName());
+				// No rule found for non-terminal symbol: there is an error in the grammar
+				if (target == null) throw new MissingRule(token);
+
+				frames[frame + POSITION] = pos;
+				frames[frame + TOKEN] = i;
+				return enter(target, pos);
+			}
+			frames[frame + POSITION] = pos;
+			frames[frame + TOKEN] = i;
+
+			if (i == tokens.length) {
+				// We succeeded in parsing the alternative, the top-level rule also needs the complete input
+				return base + top > 0 || input.isEnd(input.skipWhitespace(pos)) ? FINISH : NEXT_ALTERNATIVE;
+			}
+			// The alternative has more symbols after the epsilon, give up on the rule
+			frames[frame + FLAGS] |= WRONG_SYMBOL;
+			frames[frame + POSITION] = frames[frame + START];
+			tracer.missingSymbols(rule, rule.getAlternatives().get(index), base + top);
+			return FINISH;
+		}
+
+		/**
+		 * Continues the rule on top of the stack with the outcome of the rule of one of its tokens
+		 */
+		private int resume() {
+			final int frame = top * FRAME;
+			if (result == null) {
+				final var tokens = alternatives[top][frames[frame + ALTERNATIVE]];
+				return failAlternative(tokens[frames[frame + TOKEN] - 1], frames[frame + POSITION]);
+			}
+			if (!resultSent) addChild(result);
+			frames[frame + POSITION] = resultEnd;
+			return NEXT_TOKEN;
+		}
+
+		private int failAlternative(final Token token, final int pos) {
+			final int frame = top * FRAME;
+			frames[frame + FLAGS] |= WRONG_SYMBOL;
+			nodes[top] = null;
+			final var rule = rules[top];
+			tracer.failAlternative(rule, rule.getAlternatives().get(frames[frame + ALTERNATIVE]), token, pos, base + top);
+			return NEXT_ALTERNATIVE;
+		}
+
+		/**
+		 * Pops the rule on top of the stack, and sets its outcome
+		 */
+		private void finish() {
+			final int depth = top, level = base + depth, frame = depth * FRAME;
+			final var rule = rules[depth];
+			final int start = frames[frame + START];
+			final int pos = frames[frame + POSITION];
+			final int flags = frames[frame + FLAGS];
+
+			Node node = null;
+			if ((flags & WRONG_SYMBOL) != 0) {
+				// None of the alternatives matched: fail
+				tracer.fail(rule, input, start, level, NO_MATCHING_ALTERNATIVE);
+			} else if (pos == start && (flags & READ_EPSILON) == 0) {
+				// We did not consume anything, and the symbol was not epsilon: fail
+				tracer.fail(rule, input, start, level, NOTHING_CONSUMED);
+			} else if (level == 0 && !input.isEnd(input.skipWhitespace(pos))) {
+				// The top-level rule must parse the complete string
+				tracer.fail(rule, input, start, level, INPUT_REMAINING);
+			} else {
+				tracer.succeed(rule, input, start, pos, level);
+				node = nodes[depth];
+			}
+
+			rules[depth] = null;
+			alternatives[depth] = null;
+			firsts[depth] = null;
+			nodes[depth] = null;
+			top--;
+
+			// A node that was sent has no children, it can't be reused
+			final boolean sent = depth < committed;
+			if (sent) {
+				committed--;
+				if (node != null) events.pop();
+			}
+			if (memo != null && level > 0 && !sent) {
+				if (node == null) memo.failure(rule, start);
+				else memo.success(rule, start, node, pos - start);
+			}
+			result = node;
+			resultEnd = node == null ? start : pos;
+			resultSent = sent;
+		}
+
+		/**
+		 * Adds a node to the rule on top of the stack, or sends it when the rule was sent
+		 */
+		private void addChild(final Node child) {
+			if (top >= committed) nodes[top].addChild(child);
+			else send(child);
+		}
+
+		/**
+		 * Sends the outcome of the parse, if it wasn't sent while parsing
+		 */
+		void sendResult() {
+			if (!resultSent) send(result);
+		}
+
+		private void send(final Node node) {
+			try {
+				TreeWalker.prefix(node).walk(events);
+			} catch (VisitException e) {
+				throw new VisitFailed(e);
+			}
+		}
+
+		private void visit(final Node node) {
+			try {
+				events.visit(node);
+			} catch (VisitException e) {
+				throw new VisitFailed(e);
+			}
+		}
+	}
+
+	private FirstSet[] predictions(final BnfRule rule, final int alternatives) {
+		if (analysis == null) return null;
+		final var firsts = analysis.alternatives(rule);
+		// The rule was changed after the analysis, its sets no longer apply
+		return firsts == null || firsts.length != alternatives ? null : firsts;
+	}
+
+	// Carries the exception of a visitor out of the parse loop
+	private static final class VisitFailed extends RuntimeException {
+		VisitFailed(final VisitException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized VisitException getCause() {
+			return (VisitException) super.getCause();
+		}
+	}
+
+}
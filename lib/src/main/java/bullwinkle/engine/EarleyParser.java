@@ -0,0 +1,639 @@
+package bullwinkle.engine;
+
+import bullwinkle.BnfRule;
+import bullwinkle.ParseTracer;
+import bullwinkle.error.MissingRule;
+import bullwinkle.error.ParsingFailed;
+import bullwinkle.error.RemainingInputAfterParsing;
+import bullwinkle.nodes.Node;
+import bullwinkle.tokens.EpsilonTerminalToken;
+import bullwinkle.tokens.NonTerminalToken;
+import bullwinkle.tokens.RegexTerminalToken;
+import bullwinkle.tokens.Token;
+import bullwinkle.util.ParseInput;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static bullwinkle.ParseTracer.Failure.INPUT_REMAINING;
+import static bullwinkle.engine.Nodes.*;
+
+/**
+ * An Earley parser. It accepts every context-free grammar, including left
+ * recursive and ambiguous ones, and does not need a recursion limit. Parsing
+ * is cubic in the worst case, and close to linear for grammars that are
+ * mostly deterministic, left or right recursive. Right recursion is kept
+ * linear with Leo items, which skip the completions of a deterministic chain
+ * of rules. The tree is built with an explicit stack, so deep input does not
+ * use the call stack.
+ * <p>
+ * The chart has one set of items per input offset. A terminal is matched
+ * after skipping whitespace, like the other engines do. When the input has
+ * more than one parse tree, the tree is built by preferring the first
+ * alternative of every rule, and then the longest match for every
+ * non-terminal.
+ * <p>
+ * Unlike the backtracking parser, this one does not commit to the first
+ * alternative of a rule that matches, so it can accept input the backtracking
+ * parser rejects, and build a different tree for it. With
+ * <tt>&lt;S&gt; := a &lt;T&gt;</tt> and <tt>&lt;T&gt; := b | b c</tt>, it
+ * accepts <tt>a b c</tt>, where the backtracking parser matches <tt>b</tt>
+ * and then fails on the remaining input.
+ */
+public final class EarleyParser implements ParseEngine {
+
+	private final BnfRule startRule;
+	private final ParseTracer tracer;
+	private final boolean partialParsing;
+
+	private final Map<BnfRule, Integer> ruleIds = new IdentityHashMap<>();
+	private final List<BnfRule> rules = new ArrayList<>();
+	// For every rule, the ids of its alternatives in order
+	private final List<int[]> ruleAlternatives = new ArrayList<>();
+	private final List<Alternative> alternatives = new ArrayList<>();
+	private final boolean[] nullable;
+
+	public EarleyParser(final BnfRule startRule, final ParseTracer tracer, final boolean partialParsing) {
+		this.startRule = startRule;
+		this.tracer = tracer;
+		this.partialParsing = partialParsing;
+		register(startRule);
+		this.nullable = computeNullable();
+	}
+
+	private int register(final BnfRule rule) {
+		final var known = ruleIds.get(rule);
+		if (known != null) return known;
+
+		final int id = rules.size();
+		ruleIds.put(rule, id);
+		rules.add(rule);
+		ruleAlternatives.add(null);
+
+		final var ids = new ArrayList<Integer>();
+		for (final var tokens : rule.getAlternativeTokens()) {
+			final var symbols = new ArrayList<Token>();
+			boolean epsilon = false, dead = false;
+			for (final var token : tokens) {
+				if (epsilon) {
+					// The other engines reject an alternative with tokens after an epsilon
+					dead = true;
+					break;
+				}
+				if (token instanceof EpsilonTerminalToken) epsilon = true;
+				else symbols.add(token);
+			}
+			if (dead) continue;
+			final var alternative = new Alternative(id, symbols.toArray(new Token[0]), epsilon);
+			ids.add(alternatives.size());
+			alternatives.add(alternative);
+		}
+		ruleAlternatives.set(id, ids.stream().mapToInt(Integer::intValue).toArray());
+
+		for (final int alternative : ruleAlternatives.get(id)) {
+			final var symbols = alternatives.get(alternative).symbols;
+			for (int i = 0; i < symbols.length; i++) {
+				if (symbols[i] instanceof NonTerminalToken nonTerminal && nonTerminal.getRule() != null) {
+					alternatives.get(alternative).targets[i] = register(nonTerminal.getRule());
+				}
+			}
+		}
+		return id;
+	}
+
+	private boolean[] computeNullable() {
+		final var nullable = new boolean[rules.size()];
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (final var alternative : alternatives) {
+				if (nullable[alternative.rule]) continue;
+				boolean all = true;
+				for (int i = 0; i < alternative.symbols.length && all; i++) {
+					all = alternative.targets[i] >= 0 && nullable[alternative.targets[i]];
+				}
+				if (all) {
+					nullable[alternative.rule] = true;
+					changed = true;
+				}
+			}
+		}
+		return nullable;
+	}
+
+	@Override
+	public Node parse(final ParseInput input) throws ParsingFailed {
+		try {
+			return parseInput(input);
+		} finally {
+			RegexTerminalToken.releaseInput();
+		}
+	}
+
+	private Node parseInput(final ParseInput input) {
+		final var chart = new Chart(input);
+		final int start = ruleIds.get(startRule);
+		for (final int alternative : ruleAlternatives.get(start)) chart.add(0, item(alternative, 0, 0));
+
+		int end = -1, furthest = 0;
+		boolean matched = false;
+		for (int position = 0; position < chart.sets.size(); position++) {
+			final var set = chart.sets.get(position);
+			if (set == null) continue;
+			furthest = position;
+			for (int i = 0; i < set.size; i++) process(chart, position, set.items[i]);
+			if (!chart.isComplete(start, 0, position)) continue;
+			matched = true;
+			if (input.isEnd(input.skipWhitespace(position))) end = position;
+		}
+
+		if (end < 0) {
+			if (!matched) throw new ParsingFailed("The input does not follow the grammar after offset " + furthest);
+			tracer.fail(startRule, input, 0, 0, INPUT_REMAINING);
+			throw new RemainingInputAfterParsing();
+		}
+		return new TreeBuilder(chart, input).build(start, 0, end);
+	}
+
+	private void process(final Chart chart, final int position, final long item) {
+		final var alternative = alternatives.get(alternativeOf(item));
+		final int dot = dotOf(item), origin = originOf(item);
+
+		if (dot == alternative.symbols.length) {
+			// Completion: move every item waiting on this rule past it
+			chart.complete(alternative.rule, origin, position, alternativeOf(item));
+			if (origin < position) {
+				final long top = leo(chart, origin, alternative.rule);
+				if (top >= 0) {
+					// Right recursion: complete the last rule of the chain right away
+					chart.add(position, top);
+					return;
+				}
+			}
+			final var waiting = chart.waiting(origin, alternative.rule);
+			if (waiting == null) return;
+			for (int i = 0; i < waiting.size; i++) chart.add(position, waiting.items[i] + 1);
+			return;
+		}
+
+		final var symbol = alternative.symbols[dot];
+		if (symbol instanceof NonTerminalToken) {
+			final int target = alternative.targets[dot];
+			if (target < 0) throw new MissingRule(symbol);
+			final int next = chart.input.skipWhitespace(position);
+			if (partialParsing && chart.input.startsWith(symbol.toString(), next)) {
+				chart.add(next + symbol.toString().length(), item + 1);
+			}
+			if (chart.wait(position, target, item)) {
+				tracer.enterRule(rules.get(target), chart.input, position, 0);
+				for (final int predicted : ruleAlternatives.get(target)) chart.add(position, item(predicted, 0, position));
+			}
+			// A rule that matches the empty string completes right away
+			if (nullable[target]) chart.add(position, item + 1);
+			return;
+		}
+
+		// Scan a terminal
+		final int next = chart.input.skipWhitespace(position);
+		if (chart.input.isEnd(next)) return;
+		final int length = chart.input.match(symbol, next);
+		if (length <= 0) return;
+		tracer.matchTerminal(symbol, chart.input, next, length, 0);
+		chart.add(next + length, item + 1);
+	}
+
+	/**
+	 * Finds the Leo item of a rule in a set. When a single item waits on the
+	 * rule there, with the rule as its last symbol, completing the rule also
+	 * completes that item, and so on up the chain. The completed item at the
+	 * top of the chain is added directly, instead of completing every rule in
+	 * between, and the skipped completions are kept as links for the tree.
+	 * @return The completed item at the top of the chain, or -1 if there is none
+	 */
+	private long leo(final Chart chart, final int position, final int rule) {
+		// The sets, rules and waiting items of the chain that are not known yet
+		final var chain = new ArrayList<long[]>();
+		int set = position, target = rule;
+		long top;
+		while (true) {
+			final var known = chart.sets.get(set).leo.get(target);
+			if (known != null) {
+				top = known;
+				break;
+			}
+			final var waiting = chart.waiting(set, target);
+			final long item = waiting == null || waiting.size != 1 ? -1 : waiting.items[0];
+			if (item < 0 || originOf(item) >= set
+					|| dotOf(item) != alternatives.get(alternativeOf(item)).symbols.length - 1) {
+				chart.sets.get(set).leo.put(target, -1L);
+				top = -1;
+				break;
+			}
+			chain.add(new long[] { set, target, item });
+			set = originOf(item);
+			target = alternatives.get(alternativeOf(item)).rule;
+		}
+		for (int i = chain.size() - 1; i >= 0; i--) {
+			final long item = chain.get(i)[2];
+			if (top < 0) top = item + 1;
+			chart.sets.get((int) chain.get(i)[0]).leo.put((int) chain.get(i)[1], top);
+			chart.link((int) chain.get(i)[1], (int) chain.get(i)[0],
+				new Link(alternatives.get(alternativeOf(item)).rule, originOf(item), alternativeOf(item)));
+		}
+		return top;
+	}
+
+	private static long item(final int alternative, final int dot, final int origin) {
+		return ((long) origin << 32) | ((long) alternative << 8) | dot;
+	}
+	private static int originOf(final long item) {
+		return (int) (item >>> 32);
+	}
+	private static int alternativeOf(final long item) {
+		return (int) ((item >>> 8) & 0xFFFFFF);
+	}
+	private static int dotOf(final long item) {
+		return (int) (item & 0xFF);
+	}
+
+	private static final class Alternative {
+		final int rule;
+		final Token[] symbols;
+		// For every symbol, the id of the rule it refers to, or -1
+		final int[] targets;
+		final boolean epsilon;
+
+		Alternative(final int rule, final Token[] symbols, final boolean epsilon) {
+			if (symbols.length > 0xFF) throw new IllegalArgumentException("Alternative has too many tokens");
+			this.rule = rule;
+			this.symbols = symbols;
+			this.targets = new int[symbols.length];
+			Arrays.fill(targets, -1);
+			this.epsilon = epsilon;
+		}
+	}
+
+	private static class ItemList {
+		long[] items = new long[8];
+		int size;
+
+		void add(final long item) {
+			if (size == items.length) items = Arrays.copyOf(items, size * 2);
+			items[size++] = item;
+		}
+	}
+
+	private static final class ItemSet extends ItemList {
+		final Set<Long> seen = new HashSet<>();
+		// The items waiting on a rule, by rule id
+		final Map<Integer, ItemList> waiting = new HashMap<>();
+		// The Leo item of a rule by rule id, or -1 if it has none
+		final Map<Integer, Long> leo = new HashMap<>();
+		// The (rule, origin) keys completed at this offset
+		final ItemList completions = new ItemList();
+	}
+
+	// A completion skipped by a Leo item: the alternative of the rule matches from the origin wherever the rule it ends with does
+	private record Link(int rule, int origin, int alternative) {}
+
+	private static final class Chart {
+		final ParseInput input;
+		final List<ItemSet> sets = new ArrayList<>();
+		// For every (rule, origin), the alternatives completed at every end offset, the last one first
+		final Map<Long, TreeMap<Integer, List<Integer>>> completed = new HashMap<>();
+		// For every (rule, origin), the completions skipped by Leo items when it completes
+		final Map<Long, List<Link>> links = new HashMap<>();
+
+		Chart(final ParseInput input) {
+			this.input = input;
+		}
+
+		void add(final int position, final long item) {
+			while (sets.size() <= position) sets.add(null);
+			var set = sets.get(position);
+			if (set == null) sets.set(position, set = new ItemSet());
+			if (set.seen.add(item)) set.add(item);
+		}
+
+		/**
+		 * Registers an item waiting on a rule
+		 * @return true if the rule was not predicted at this position yet
+		 */
+		boolean wait(final int position, final int rule, final long item) {
+			final var set = sets.get(position);
+			final var list = set.waiting.get(rule);
+			if (list != null) {
+				list.add(item);
+				return false;
+			}
+			set.waiting.computeIfAbsent(rule, r -> new ItemList()).add(item);
+			return true;
+		}
+
+		ItemList waiting(final int position, final int rule) {
+			final var set = sets.get(position);
+			return set == null ? null : set.waiting.get(rule);
+		}
+
+		void complete(final int rule, final int origin, final int end, final int alternative) {
+			final long key = key(rule, origin);
+			final var ends = completed.computeIfAbsent(key, k -> new TreeMap<>(Comparator.reverseOrder()));
+			var list = ends.get(end);
+			if (list == null) {
+				ends.put(end, list = new ArrayList<>());
+				sets.get(end).completions.add(key);
+			}
+			if (!list.contains(alternative)) list.add(alternative);
+		}
+
+		void link(final int rule, final int origin, final Link link) {
+			links.computeIfAbsent(key(rule, origin), k -> new ArrayList<>()).add(link);
+		}
+
+		boolean isComplete(final int rule, final int origin, final int end) {
+			final var ends = completed.get(key(rule, origin));
+			return ends != null && ends.containsKey(end);
+		}
+
+		static long key(final int rule, final int origin) {
+			return ((long) rule << 32) | origin;
+		}
+	}
+
+	// A set of (key, end) pairs
+	private static final class Triples {
+		private final Map<Long, Set<Integer>> ends = new HashMap<>();
+
+		boolean add(final long key, final int end) {
+			return ends.computeIfAbsent(key, k -> new HashSet<>()).add(end);
+		}
+
+		boolean contains(final long key, final int end) {
+			final var set = ends.get(key);
+			return set != null && set.contains(end);
+		}
+
+		void remove(final long key, final int end) {
+			final var set = ends.get(key);
+			if (set != null) set.remove(end);
+		}
+	}
+
+	/**
+	 * Builds a parse tree from the completed items of the chart, with an
+	 * explicit stack of the rules being built
+	 */
+	private final class TreeBuilder {
+		// The kinds of the symbols of a chosen alternative
+		private static final int RULE = 0, TERMINAL = 1, SYMBOL = 2;
+
+		private final Chart chart;
+		private final ParseInput input;
+		// The (alternative and symbol, offset, end) splits known to fail
+		private final Triples failed = new Triples();
+		// For every end offset, the alternatives of every (rule, start) completed there through Leo items
+		private final Map<Integer, Map<Long, List<Integer>>> derived = new HashMap<>();
+		// The (rule, start, end) triples being built, to stop on cycles, and those that can't be built below them
+		private final Triples building = new Triples();
+		private final Triples blocked = new Triples();
+		// Set when a split is rejected because of a triple being built or blocked
+		private boolean excluded;
+
+		TreeBuilder(final Chart chart, final ParseInput input) {
+			this.chart = chart;
+			this.input = input;
+		}
+
+		Node build(final int rule, final int start, final int end) {
+			final var stack = new ArrayDeque<Frame>();
+			final var root = new Frame(rule, start, end);
+			if (!root.choose()) return null;
+			stack.push(root);
+			while (true) {
+				final var frame = stack.peek();
+				final int index = frame.nextChild();
+				if (index < 0) {
+					stack.pop();
+					frame.release();
+					final var node = frame.node();
+					if (stack.isEmpty()) return node;
+					stack.peek().setChild(node);
+					continue;
+				}
+				final var child = new Frame(frame.alternative.targets[index], frame.starts[index], frame.ends[index]);
+				if (child.choose()) {
+					stack.push(child);
+					continue;
+				}
+				// Only a cycle leads here, the parent tries another split without the child
+				child.release();
+				var failing = child;
+				while (true) {
+					final var parent = stack.peek();
+					parent.block(failing);
+					if (parent.choose()) break;
+					stack.pop();
+					parent.release();
+					if (stack.isEmpty()) return null;
+					failing = parent;
+				}
+			}
+		}
+
+		/**
+		 * A rule being built, with the alternative and the split chosen for it
+		 */
+		private final class Frame {
+			final int rule, start, end;
+			final long key;
+			// The triples blocked while building this rule
+			final List<Frame> blockedHere = new ArrayList<>();
+			Alternative alternative;
+			int[] kinds, starts, ends;
+			Node[] children;
+			int pending;
+
+			Frame(final int rule, final int start, final int end) {
+				this.rule = rule;
+				this.start = start;
+				this.end = end;
+				this.key = Chart.key(rule, start);
+				building.add(key, end);
+			}
+
+			/**
+			 * Chooses the first alternative and split that match, and creates the terminal children
+			 * @return false if none matches
+			 */
+			boolean choose() {
+				final var candidates = candidates(rule, start, end);
+				for (final int id : ruleAlternatives.get(rule)) {
+					if (!candidates.contains(id)) continue;
+					final var candidate = alternatives.get(id);
+					final int length = candidate.symbols.length;
+					kinds = new int[length];
+					starts = new int[length];
+					ends = new int[length];
+					if (!split(candidate, id, 0, start, end, kinds, starts, ends)) continue;
+
+					alternative = candidate;
+					children = new Node[length];
+					for (int i = 0; i < length; i++) {
+						if (kinds[i] == TERMINAL) children[i] = terminalNode(candidate.symbols[i], input, starts[i], ends[i]);
+						else if (kinds[i] == SYMBOL) children[i] = symbolNode(input, starts[i], ends[i] - starts[i]);
+					}
+					return true;
+				}
+				return false;
+			}
+
+			// The index of the next rule to build, or -1 when every child is built
+			int nextChild() {
+				while (pending < children.length && children[pending] != null) pending++;
+				return pending < children.length ? pending : -1;
+			}
+
+			void setChild(final Node child) {
+				children[pending] = child;
+			}
+
+			void block(final Frame child) {
+				if (blocked.add(child.key, child.end)) blockedHere.add(child);
+			}
+
+			void release() {
+				building.remove(key, end);
+				for (final var child : blockedHere) blocked.remove(child.key, child.end);
+			}
+
+			Node node() {
+				final var node = ruleNode(rules.get(rule));
+				for (final var child : children) node.addChild(child);
+				if (alternative.epsilon) node.addChild(epsilonNode(input.skipWhitespace(start)));
+				return node;
+			}
+		}
+
+		/**
+		 * Splits the input between the symbols of an alternative, trying the
+		 * longest match first for every non-terminal. It only recurses once per
+		 * symbol, and leaves the rules to build to the stack.
+		 */
+		private boolean split(final Alternative alternative, final int id, final int index, final int position, final int end,
+							  final int[] kinds, final int[] starts, final int[] ends) {
+			if (index == alternative.symbols.length) return position == end;
+			final long failure = Chart.key(id << 8 | index, position);
+			if (failed.contains(failure, end)) return false;
+
+			final boolean excludedBefore = excluded;
+			excluded = false;
+			int kind = -1, from = position, to = -1;
+			final var symbol = alternative.symbols[index];
+			final int next = input.skipWhitespace(position);
+			if (symbol instanceof NonTerminalToken) {
+				final int target = alternative.targets[index];
+				if (partialParsing && input.startsWith(symbol.toString(), next)
+						&& split(alternative, id, index + 1, next + symbol.toString().length(), end, kinds, starts, ends)) {
+					kind = SYMBOL;
+					from = next;
+					to = next + symbol.toString().length();
+				} else if (index == alternative.symbols.length - 1) {
+					// The last symbol ends where the alternative ends, maybe through a Leo item
+					if (completes(target, position, end) && !excludes(target, position, end)) {
+						kind = RULE;
+						to = end;
+					}
+				} else {
+					final var childEnds = chart.completed.get(Chart.key(target, position));
+					if (childEnds != null) {
+						for (final int childEnd : childEnds.tailMap(end, true).keySet()) {
+							if (excludes(target, position, childEnd)) continue;
+							if (!split(alternative, id, index + 1, childEnd, end, kinds, starts, ends)) continue;
+							kind = RULE;
+							to = childEnd;
+							break;
+						}
+					}
+				}
+			} else if (!input.isEnd(next)) {
+				final int length = input.match(symbol, next);
+				if (length > 0 && next + length <= end
+						&& split(alternative, id, index + 1, next + length, end, kinds, starts, ends)) {
+					kind = TERMINAL;
+					from = next;
+					to = next + length;
+				}
+			}
+			// A failure caused by a triple being built may not fail from elsewhere in the tree
+			if (kind < 0 && !excluded) failed.add(failure, end);
+			excluded |= excludedBefore;
+			if (kind < 0) return false;
+			kinds[index] = kind;
+			starts[index] = from;
+			ends[index] = to;
+			return true;
+		}
+
+		private boolean excludes(final int rule, final int start, final int end) {
+			final long key = Chart.key(rule, start);
+			if (!building.contains(key, end) && !blocked.contains(key, end)) return false;
+			excluded = true;
+			return true;
+		}
+
+		// The alternatives of a rule that match between two offsets
+		private Set<Integer> candidates(final int rule, final int start, final int end) {
+			final var candidates = new HashSet<Integer>();
+			final var ends = chart.completed.get(Chart.key(rule, start));
+			final var real = ends == null ? null : ends.get(end);
+			if (real != null) candidates.addAll(real);
+			final var skipped = derived(end).get(Chart.key(rule, start));
+			if (skipped != null) candidates.addAll(skipped);
+			return candidates;
+		}
+
+		// Checks whether a rule matches between two offsets, also when a Leo item skipped its completion
+		private boolean completes(final int rule, final int start, final int end) {
+			return chart.isComplete(rule, start, end) || derived(end).containsKey(Chart.key(rule, start));
+		}
+
+		/**
+		 * Finds the completions skipped by Leo items at an end offset, by
+		 * following the links up from the rules completed there
+		 */
+		private Map<Long, List<Integer>> derived(final int end) {
+			final var known = derived.get(end);
+			if (known != null) return known;
+
+			final var skipped = new HashMap<Long, List<Integer>>();
+			final var completions = chart.sets.get(end).completions;
+			final var seen = new HashSet<Long>();
+			final var pending = new ItemList();
+			for (int i = 0; i < completions.size; i++) {
+				if (seen.add(completions.items[i])) pending.add(completions.items[i]);
+			}
+			while (pending.size > 0) {
+				final var links = chart.links.get(pending.items[--pending.size]);
+				if (links == null) continue;
+				for (final var link : links) {
+					final long parent = Chart.key(link.rule(), link.origin());
+					final var list = skipped.computeIfAbsent(parent, k -> new ArrayList<>());
+					if (!list.contains(link.alternative())) list.add(link.alternative());
+					if (seen.add(parent)) pending.add(parent);
+				}
+			}
+			derived.put(end, skipped);
+			return skipped;
+		}
+	}
+
+}
@@ -0,0 +1,13 @@
+package bullwinkle.engine;
+
+/**
+ * The algorithms a parser can use, see {@link bullwinkle.BnfParserBuilder#engine(EngineType)}
+ */
+public enum EngineType {
+	/** Recursive descent that tries the alternatives of a rule in order, the default */
+	BACKTRACKING,
+	/** A {@link PredictiveParser} if the grammar is LL(1), backtracking otherwise */
+	PREDICTIVE,
+	/** An {@link EarleyParser}, for left-recursive and ambiguous grammars */
+	EARLEY
+}
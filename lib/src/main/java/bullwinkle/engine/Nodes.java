@@ -0,0 +1,65 @@
+package bullwinkle.engine;
+
+import bullwinkle.BnfRule;
+import bullwinkle.nodes.CaptureBlockNode;
+import bullwinkle.nodes.Node;
+import bullwinkle.tokens.RegexTerminalToken;
+import bullwinkle.tokens.Token;
+import bullwinkle.util.ParseInput;
+
+/**
+ * Creates the nodes of the parse tree, so every parser builds the same tree.
+ */
+public enum Nodes {;
+
+	/**
+	 * Creates the node for a rule, its children are added while parsing.
+	 * Its offsets are those of its children.
+	 */
+	public static Node ruleNode(final BnfRule rule) {
+		final var node = new Node();
+		final var name = rule.getLeftHandSide().toString();
+		node.setToken(name);
+		node.setValue(name);
+		return node;
+	}
+
+	/**
+	 * Creates the node for a terminal token that matched the input
+	 * between two offsets. A regex gets a child for each capture block.
+	 */
+	public static Node terminalNode(final Token token, final ParseInput input, final int start, final int end) {
+		final var node = new Node();
+		if (token instanceof RegexTerminalToken regex) {
+			for (final var block : regex.getCaptureBlocks(input.getText(), start, end)) {
+				node.addChild(new CaptureBlockNode(block).setSpan(start, end));
+			}
+		}
+		return text(node, input, start, end);
+	}
+
+	/**
+	 * Creates the node for a matched epsilon at some offset
+	 */
+	public static Node epsilonNode(final int offset) {
+		final var node = new Node();
+		node.setToken("");
+		return node.setSpan(offset, offset);
+	}
+
+	/**
+	 * Creates the node for a non-terminal that partial parsing found
+	 * written out in the input at some offset
+	 */
+	public static Node symbolNode(final ParseInput input, final int offset, final int length) {
+		return text(new Node(), input, offset, offset + length);
+	}
+
+	// The token of a node refers to the input, unless the input doesn't keep its text
+	private static Node text(final Node node, final ParseInput input, final int start, final int end) {
+		if (input.keepsText()) return node.setText(input.getText(), start, end);
+		node.setToken(input.substring(start, end));
+		return node.setSpan(start, end);
+	}
+
+}
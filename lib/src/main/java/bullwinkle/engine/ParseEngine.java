@@ -0,0 +1,22 @@
+package bullwinkle.engine;
+
+import bullwinkle.error.ParsingFailed;
+import bullwinkle.nodes.Node;
+import bullwinkle.util.ParseInput;
+
+/**
+ * An algorithm that parses an input according to a grammar. The engines
+ * differ in which grammars they accept and how fast they are, but all
+ * produce the same parse tree.
+ */
+public interface ParseEngine {
+
+	/**
+	 * Parses the complete input with the start rule of the grammar
+	 * @param input The input
+	 * @return The parse tree
+	 * @throws ParsingFailed If the input does not follow the grammar
+	 */
+	Node parse(ParseInput input) throws ParsingFailed;
+
+}
@@ -0,0 +1,116 @@
+package bullwinkle.engine;
+
+import bullwinkle.BnfRule;
+import bullwinkle.ParseTracer;
+import bullwinkle.analysis.LlTable;
+import bullwinkle.error.MissingRule;
+import bullwinkle.error.ParsingFailed;
+import bullwinkle.error.RemainingInputAfterParsing;
+import bullwinkle.error.UnexpectedInput;
+import bullwinkle.nodes.Node;
+import bullwinkle.tokens.EpsilonTerminalToken;
+import bullwinkle.tokens.NonTerminalToken;
+import bullwinkle.tokens.RegexTerminalToken;
+import bullwinkle.tokens.Token;
+import bullwinkle.tokens.TokenString;
+import bullwinkle.util.ParseInput;
+
+import java.util.Arrays;
+
+import static bullwinkle.ParseTracer.Failure.NO_MATCHING_ALTERNATIVE;
+import static bullwinkle.engine.Nodes.*;
+
+/**
+ * A table-driven parser for LL(1) grammars. The next character of the input
+ * selects the alternative of every rule from an {@link LlTable}, so the input
+ * is read once without backtracking. The tokens still to be matched are kept
+ * on an explicit stack instead of the call stack.
+ */
+public final class PredictiveParser implements ParseEngine {
+
+	private final LlTable table;
+	private final BnfRule startRule;
+	private final ParseTracer tracer;
+
+	/**
+	 * @param table The parse table, it must be LL(1)
+	 */
+	public PredictiveParser(final LlTable table, final BnfRule startRule, final ParseTracer tracer) {
+		if (!table.isLl1()) throw new IllegalArgumentException("The grammar is not LL(1): " + table.getConflicts());
+		this.table = table;
+		this.startRule = startRule;
+		this.tracer = tracer;
+	}
+
+	@Override
+	public Node parse(final ParseInput input) throws ParsingFailed {
+		try {
+			return parseInput(input);
+		} finally {
+			RegexTerminalToken.releaseInput();
+		}
+	}
+
+	private Node parseInput(final ParseInput input) {
+		// The tokens to match, with the node their match is added to, the top is at the end
+		Token[] tokens = new Token[64];
+		Node[] parents = new Node[64];
+		int top = 0;
+
+		final var root = ruleNode(startRule);
+		int pos = input.skipWhitespace(0);
+		final var start = predict(startRule, input, pos).toArray(new Token[0]);
+		for (int i = start.length - 1; i >= 0; i--) {
+			tokens[top] = start[i];
+			parents[top++] = root;
+		}
+
+		while (top > 0) {
+			final var token = tokens[--top];
+			final var parent = parents[top];
+			pos = input.skipWhitespace(pos);
+
+			if (token instanceof EpsilonTerminalToken) {
+				parent.addChild(epsilonNode(pos));
+				continue;
+			}
+			if (token instanceof NonTerminalToken nonTerminal) {
+				final var rule = nonTerminal.getRule();
+				if (rule == null) throw new MissingRule(token);
+				final var node = ruleNode(rule);
+				parent.addChild(node);
+				final var alternative = predict(rule, input, pos).toArray(new Token[0]);
+				if (top + alternative.length > tokens.length) {
+					tokens = Arrays.copyOf(tokens, Math.max(tokens.length * 2, top + alternative.length));
+					parents = Arrays.copyOf(parents, tokens.length);
+				}
+				for (int i = alternative.length - 1; i >= 0; i--) {
+					tokens[top] = alternative[i];
+					parents[top++] = node;
+				}
+				continue;
+			}
+
+			final int length = input.isEnd(pos) ? -1 : input.match(token, pos);
+			if (length <= 0) throw new UnexpectedInput(token, pos);
+			tracer.matchTerminal(token, input, pos, length, 0);
+			parent.addChild(terminalNode(token, input, pos, pos + length));
+			pos += length;
+		}
+
+		if (!input.isEnd(input.skipWhitespace(pos))) throw new RemainingInputAfterParsing();
+		return root;
+	}
+
+	private TokenString predict(final BnfRule rule, final ParseInput input, final int pos) {
+		tracer.enterRule(rule, input, pos, 0);
+		final var alternative = table.predict(rule, input.isEnd(pos) ? -1 : input.charAt(pos));
+		if (alternative == null) {
+			tracer.fail(rule, input, pos, 0, NO_MATCHING_ALTERNATIVE);
+			throw new ParsingFailed("No alternative of rule " + rule.getLeftHandSide() + " matches at offset " + pos);
+		}
+		tracer.tryAlternative(rule, alternative, 0);
+		return alternative;
+	}
+
+}
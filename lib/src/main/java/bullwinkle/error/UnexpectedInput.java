@@ -0,0 +1,9 @@
+package bullwinkle.error;
+
+import bullwinkle.tokens.Token;
+
+public final class UnexpectedInput extends ParsingFailed {
+    public UnexpectedInput(final Token expected, final int offset) {
+        super("Expected " + expected + " at offset " + offset);
+    }
+}
@@ -0,0 +1,7 @@
+package bullwinkle.error;
+
+public final class UnknownToken extends ParsingFailed {
+    public UnknownToken(final int offset) {
+        super("No token of the grammar matches the input at offset " + offset);
+    }
+}
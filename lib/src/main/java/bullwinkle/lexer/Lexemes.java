@@ -0,0 +1,62 @@
+package bullwinkle.lexer;
+
+import bullwinkle.tokens.Token;
+
+import java.util.Arrays;
+
+/**
+ * The lexemes of an input, as parallel int arrays of kinds and offsets
+ */
+public final class Lexemes {
+
+	private final Lexer lexer;
+	private final CharSequence input;
+
+	private int[] kinds = new int[64];
+	private int[] starts = new int[64];
+	private int[] ends = new int[64];
+	private int size;
+
+	Lexemes(final Lexer lexer, final CharSequence input) {
+		this.lexer = lexer;
+		this.input = input;
+	}
+
+	void add(final int kind, final int start, final int end) {
+		if (size == kinds.length) {
+			kinds = Arrays.copyOf(kinds, size * 2);
+			starts = Arrays.copyOf(starts, size * 2);
+			ends = Arrays.copyOf(ends, size * 2);
+		}
+		kinds[size] = kind;
+		starts[size] = start;
+		ends[size++] = end;
+	}
+
+	public int size() {
+		return size;
+	}
+	public int kind(final int index) {
+		return kinds[index];
+	}
+	public int start(final int index) {
+		return starts[index];
+	}
+	public int end(final int index) {
+		return ends[index];
+	}
+
+	/**
+	 * Matches a terminal against the lexeme that starts at some offset
+	 * @return The length of the lexeme, or 0 if the terminal does not match
+	 *   it or no lexeme starts at the offset
+	 */
+	public int match(final Token token, final int offset) {
+		final var accepted = lexer.kinds(token);
+		if (accepted == null) return token.match(input, offset);
+		final int index = Arrays.binarySearch(starts, 0, size, offset);
+		if (index < 0 || !accepted.get(kinds[index])) return 0;
+		return ends[index] - offset;
+	}
+
+}
@@ -0,0 +1,136 @@
+package bullwinkle.lexer;
+
+import bullwinkle.BnfRule;
+import bullwinkle.error.UnknownToken;
+import bullwinkle.tokens.LiteralSetTerminalToken;
+import bullwinkle.tokens.NumberTerminalToken;
+import bullwinkle.tokens.RegexTerminalToken;
+import bullwinkle.tokens.TerminalToken;
+import bullwinkle.tokens.Token;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits an input into the terminals of a grammar before it is parsed. Each
+ * distinct literal and regex of the grammar is a kind of lexeme. At every
+ * offset the longest match wins, a literal wins a tie with a regex, and
+ * among regexes the first one in the grammar wins. Whitespace between
+ * lexemes is skipped.
+ * <p>
+ * With a lexer a terminal only matches a whole lexeme. The keyword
+ * <tt>if</tt> for example no longer matches the start of <tt>iffy</tt>,
+ * which a grammar without lexer allows. Terminals the lexer can't handle,
+ * like a {@link bullwinkle.tokens.StringTerminalToken}, are still matched
+ * against the characters of the input.
+ */
+public final class Lexer {
+
+	private final LiteralSetTerminalToken literals;
+	private final List<RegexTerminalToken> regexes;
+	// The kinds of lexemes each terminal of the grammar matches
+	private final Map<Token, BitSet> kinds = new IdentityHashMap<>();
+
+	private Lexer(final List<String> literals, final List<RegexTerminalToken> regexes) {
+		this.literals = new LiteralSetTerminalToken(literals);
+		this.regexes = regexes;
+	}
+
+	/**
+	 * Builds a lexer for the terminals used in some rules
+	 */
+	public static Lexer of(final List<BnfRule> rules) {
+		final var literalIds = new LinkedHashMap<String, Integer>();
+		final var regexIds = new LinkedHashMap<String, Integer>();
+		final var regexes = new ArrayList<RegexTerminalToken>();
+		final var terminals = new ArrayList<Token>();
+		for (final var rule : rules) {
+			for (final var alternative : rule.getAlternativeTokens()) {
+				for (final var token : alternative) {
+					if (token instanceof LiteralSetTerminalToken set) {
+						for (final var literal : set.getLiterals()) literalIds.putIfAbsent(literal, literalIds.size());
+					} else if (isLiteral(token)) {
+						literalIds.putIfAbsent(token.getName(), literalIds.size());
+					} else if (token instanceof RegexTerminalToken regex) {
+						if (regexIds.putIfAbsent(regex.getName(), regexIds.size()) == null) {
+							regexes.add(regex.isAnchored() ? regex : new RegexTerminalToken(regex.getName(), true));
+						}
+					} else continue;
+					terminals.add(token);
+				}
+			}
+		}
+
+		final var lexer = new Lexer(new ArrayList<>(literalIds.keySet()), regexes);
+		final int firstRegex = literalIds.size();
+		for (final var token : terminals) {
+			final var set = new BitSet();
+			if (token instanceof LiteralSetTerminalToken literalSet) {
+				for (final var literal : literalSet.getLiterals()) set.set(literalIds.get(literal));
+			} else if (token instanceof RegexTerminalToken) {
+				set.set(firstRegex + regexIds.get(token.getName()));
+			} else {
+				set.set(literalIds.get(token.getName()));
+			}
+			lexer.kinds.put(token, set);
+		}
+		return lexer;
+	}
+
+	private static boolean isLiteral(final Token token) {
+		return (token.getClass() == TerminalToken.class || token.getClass() == NumberTerminalToken.class)
+			&& !token.getName().isEmpty();
+	}
+
+	/**
+	 * Splits an input into lexemes
+	 * @throws UnknownToken If no terminal matches the input at some offset
+	 */
+	public Lexemes tokenize(final CharSequence input) {
+		try {
+			return split(input);
+		} finally {
+			RegexTerminalToken.releaseInput();
+		}
+	}
+
+	private Lexemes split(final CharSequence input) {
+		final var lexemes = new Lexemes(this, input);
+		final int length = input.length();
+		int pos = 0;
+		while (true) {
+			while (pos < length && input.charAt(pos) <= ' ') pos++;
+			if (pos == length) return lexemes;
+
+			int kind = -1, longest = 0;
+			final int literal = literals.longestIndex(input, pos);
+			if (literal >= 0) {
+				kind = literal;
+				longest = literals.getLiterals().get(literal).length();
+			}
+			for (int i = 0; i < regexes.size(); i++) {
+				final int matched = regexes.get(i).match(input, pos);
+				if (matched > longest) {
+					kind = literals.getLiterals().size() + i;
+					longest = matched;
+				}
+			}
+			if (kind < 0) throw new UnknownToken(pos);
+			lexemes.add(kind, pos, pos + longest);
+			pos += longest;
+		}
+	}
+
+	/**
+	 * Gets the kinds of lexemes a terminal matches
+	 * @return The kinds, or <tt>null</tt> if the terminal is not handled by the lexer
+	 */
+	BitSet kinds(final Token token) {
+		return kinds.get(token);
+	}
+
+}
@@ -0,0 +1,333 @@
+package bullwinkle.nodes;
+
+import bullwinkle.ParseNodeVisitor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A parse tree stored in parallel int arrays instead of a {@link Node} object
+ * per node. The nodes are numbered in prefix order, the root is node 0. Rule
+ * names and other tokens are stored once, the text of a terminal stays in the
+ * input. A {@link Node} view of any node is created on demand, so visitors and
+ * {@link bullwinkle.util.NodePath} work on the tree as well. The tree can't
+ * be changed.
+ */
+public final class CompactTree {
+
+	// The token and value of a node are an index in strings, TEXT takes the token from the input
+	private static final int NONE = -1, TEXT = -2;
+
+	private final int size;
+	private final int[] tokens;
+	private final int[] values;
+	private final int[] parents;
+	private final int[] firstChildren;
+	private final int[] nextSiblings;
+	private final int[] starts;
+	private final int[] ends;
+	private final String[] strings;
+	// The input the terminals refer to, or null
+	private final CharSequence source;
+
+	private CompactTree(final int size, final int[] tokens, final int[] values, final int[] parents,
+						final int[] firstChildren, final int[] nextSiblings, final int[] starts, final int[] ends,
+						final String[] strings, final CharSequence source) {
+		this.size = size;
+		this.tokens = tokens;
+		this.values = values;
+		this.parents = parents;
+		this.firstChildren = firstChildren;
+		this.nextSiblings = nextSiblings;
+		this.starts = starts;
+		this.ends = ends;
+		this.strings = strings;
+		this.source = source;
+	}
+
+	/**
+	 * Stores a parse tree in arrays, the nodes of the tree can be dropped afterwards
+	 */
+	public static CompactTree of(final Node root) {
+		final var builder = new Builder();
+		// The nodes still to store, with the index of their parent
+		final var pending = new ArrayDeque<Node>();
+		final var pendingParents = new ArrayDeque<Integer>();
+		pending.push(root);
+		pendingParents.push(NONE);
+		while (!pending.isEmpty()) {
+			final var node = pending.pop();
+			final int index = builder.add(node, pendingParents.pop());
+			for (int i = node.childCount() - 1; i >= 0; i--) {
+				pending.push(node.child(i));
+				pendingParents.push(index);
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Receives the nodes of a parse in prefix order, like
+	 * {@link bullwinkle.engine.BacktrackingParser#parse(bullwinkle.util.ParseInput, ParseNodeVisitor)}
+	 * sends them, and stores each one as it comes. The tree is then built
+	 * without holding a {@link Node} for every node.
+	 */
+	public static final class Collector implements ParseNodeVisitor {
+		private final Builder builder = new Builder();
+		// The nodes visited and not popped yet, from the root down
+		private int[] open = new int[64];
+		private int depth;
+
+		@Override
+		public void visit(final Node node) {
+			if (depth == open.length) open = Arrays.copyOf(open, depth * 2);
+			open[depth] = builder.add(node, depth == 0 ? NONE : open[depth - 1]);
+			depth++;
+		}
+
+		@Override
+		public void pop() {
+			depth--;
+		}
+
+		/**
+		 * Gets the tree of the nodes received so far
+		 */
+		public CompactTree tree() {
+			return builder.build();
+		}
+	}
+
+	/**
+	 * Gets the number of nodes in the tree
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets a view of the root of the tree
+	 */
+	public Node root() {
+		return node(0);
+	}
+
+	/**
+	 * Gets a view of a node, every call creates a new view
+	 * @param index The number of the node
+	 */
+	public Node node(final int index) {
+		return new View(index);
+	}
+
+	public String token(final int index) {
+		final int token = tokens[index];
+		return token == TEXT ? source.subSequence(starts[index], ends[index]).toString() : token == NONE ? null : strings[token];
+	}
+	public String value(final int index) {
+		return values[index] == NONE ? null : strings[values[index]];
+	}
+	public int start(final int index) {
+		return starts[index];
+	}
+	public int end(final int index) {
+		return ends[index];
+	}
+
+	/**
+	 * @return The parent of a node, or -1 for the root
+	 */
+	public int parent(final int index) {
+		return parents[index];
+	}
+	/**
+	 * @return The first child of a node, or -1 if it has none
+	 */
+	public int firstChild(final int index) {
+		return firstChildren[index];
+	}
+	/**
+	 * @return The next child of the parent of a node, or -1 if it is the last
+	 */
+	public int nextSibling(final int index) {
+		return nextSiblings[index];
+	}
+
+	/**
+	 * A read-only {@link Node} that shows a node of the tree
+	 */
+	private final class View extends Node {
+		private final int index;
+		// The views of the children, created on first use
+		private View[] children;
+
+		View(final int index) {
+			this.index = index;
+		}
+
+		// The children are linked from one to the next, they are only walked once per view
+		private View[] views() {
+			if (children != null) return children;
+			int count = 0;
+			for (int child = firstChildren[index]; child != NONE; child = nextSiblings[child]) count++;
+			final var views = new View[count];
+			int i = 0;
+			for (int child = firstChildren[index]; child != NONE; child = nextSiblings[child]) views[i++] = new View(child);
+			return children = views;
+		}
+
+		@Override
+		public List<Node> getChildren() {
+			return new ArrayList<>(Arrays.asList(views()));
+		}
+		@Override
+		public List<Node> children() {
+			return Collections.unmodifiableList(Arrays.asList(views()));
+		}
+		@Override
+		public int childCount() {
+			return views().length;
+		}
+		@Override
+		public Node child(final int position) {
+			final var views = views();
+			if (position < 0 || position >= views.length) throw new IndexOutOfBoundsException(position);
+			return views[position];
+		}
+
+		@Override
+		public String getToken() {
+			return token(index);
+		}
+		@Override
+		public String getValue() {
+			return value(index);
+		}
+		@Override
+		public int getStart() {
+			return starts[index];
+		}
+		@Override
+		public int getEnd() {
+			return ends[index];
+		}
+		@Override
+		public CharSequence getText() {
+			return source == null ? null : source.subSequence(starts[index], ends[index]);
+		}
+
+		@Override
+		public int getSize() {
+			// The nodes below this one follow it in prefix order
+			int next = index;
+			while (next != NONE && nextSiblings[next] == NONE) next = parents[next];
+			return (next == NONE ? size : nextSiblings[next]) - index;
+		}
+
+		@Override
+		public void setValue(final String value) {
+			throw new UnsupportedOperationException("A compact tree can't be changed");
+		}
+		@Override
+		public void setToken(final String token) {
+			throw new UnsupportedOperationException("A compact tree can't be changed");
+		}
+		@Override
+		public Node setText(final CharSequence source, final int start, final int end) {
+			throw new UnsupportedOperationException("A compact tree can't be changed");
+		}
+		@Override
+		public Node setSpan(final int start, final int end) {
+			throw new UnsupportedOperationException("A compact tree can't be changed");
+		}
+		@Override
+		public void moveSpan(final CharSequence source, final int delta) {
+			throw new UnsupportedOperationException("A compact tree can't be changed");
+		}
+		@Override
+		public void moveSpan(final CharSequence source, final int delta, final Set<Node> moved) {
+			throw new UnsupportedOperationException("A compact tree can't be changed");
+		}
+		@Override
+		public Node addChild(final Node child) {
+			throw new UnsupportedOperationException("A compact tree can't be changed");
+		}
+		@Override
+		public Node setChild(final int index, final Node child) {
+			throw new UnsupportedOperationException("A compact tree can't be changed");
+		}
+	}
+
+	private static final class Builder {
+		private int[] tokens = new int[64], values = new int[64], parents = new int[64], firstChildren = new int[64],
+			nextSiblings = new int[64], starts = new int[64], ends = new int[64];
+		// The last child stored for each node, to link its next child to
+		private int[] lastChildren = new int[64];
+		private final Map<String, Integer> indexes = new HashMap<>();
+		private final List<String> strings = new ArrayList<>();
+		private CharSequence source;
+		private int size;
+
+		int add(final Node node, final int parent) {
+			if (size == tokens.length) {
+				tokens = Arrays.copyOf(tokens, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+				parents = Arrays.copyOf(parents, size * 2);
+				firstChildren = Arrays.copyOf(firstChildren, size * 2);
+				nextSiblings = Arrays.copyOf(nextSiblings, size * 2);
+				starts = Arrays.copyOf(starts, size * 2);
+				ends = Arrays.copyOf(ends, size * 2);
+				lastChildren = Arrays.copyOf(lastChildren, size * 2);
+			}
+			final int index = size++;
+			final var text = node.getSource();
+			if (text != null && (source == null || source == text)) {
+				source = text;
+				tokens[index] = TEXT;
+			} else {
+				tokens[index] = string(node.getToken());
+			}
+			values[index] = string(node.getValue());
+			parents[index] = parent;
+			firstChildren[index] = NONE;
+			nextSiblings[index] = NONE;
+			lastChildren[index] = NONE;
+			// The offsets of a node that takes them from its children are set once they are stored
+			starts[index] = node.hasSpan() ? node.getStart() : NONE;
+			ends[index] = node.hasSpan() ? node.getEnd() : NONE;
+			if (parent != NONE) {
+				if (lastChildren[parent] == NONE) firstChildren[parent] = index;
+				else nextSiblings[lastChildren[parent]] = index;
+				lastChildren[parent] = index;
+			}
+			return index;
+		}
+
+		private int string(final String s) {
+			if (s == null) return NONE;
+			return indexes.computeIfAbsent(s, key -> {
+				strings.add(key);
+				return strings.size() - 1;
+			});
+		}
+
+		CompactTree build() {
+			// The children of a node come after it
+			for (int i = size - 1; i >= 0; i--) {
+				if (starts[i] != NONE) continue;
+				starts[i] = firstChildren[i] == NONE ? 0 : starts[firstChildren[i]];
+				ends[i] = firstChildren[i] == NONE ? 0 : ends[lastChildren[i]];
+			}
+			return new CompactTree(size, Arrays.copyOf(tokens, size), Arrays.copyOf(values, size), Arrays.copyOf(parents, size),
+				Arrays.copyOf(firstChildren, size), Arrays.copyOf(nextSiblings, size), Arrays.copyOf(starts, size),
+				Arrays.copyOf(ends, size), strings.toArray(new String[0]), source);
+		}
+	}
+
+}
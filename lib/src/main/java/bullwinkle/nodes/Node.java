@@ -2,9 +2,14 @@ package bullwinkle.nodes;
 
 import bullwinkle.error.VisitException;
 import bullwinkle.ParseNodeVisitor;
+import bullwinkle.util.TreeWalker;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 import static bullwinkle.Constants.SPACE;
 
@@ -14,12 +19,17 @@ import static bullwinkle.Constants.SPACE;
 public class Node {
 	private final ArrayList<Node> children = new ArrayList<>();
 
-	// The grammar token represented by this parse node
+	// The grammar token represented by this parse node, null while it is still in the source
 	private String token;
+	// The input the token of a terminal is taken from, or null
+	private CharSequence source;
 
 	// The value (if any) represented by this parse node
 	private String value;
 
+	// The offsets of the input this node matched, -1 when they follow from the children
+	private int start = -1, end = -1;
+
 	public Node() {}
 	public Node(final String token) {
 		setToken(token);
@@ -28,12 +38,36 @@ public class Node {
 	/**
 	 * Gets the children of this parse node. This method returns a
 	 * <em>new</em> list instance, and not the internal list the parse
-	 * node uses to store its children.
+	 * node uses to store its children. Use {@link #children()} to read
+	 * them without a copy.
 	 */
 	public List<Node> getChildren() {
 		return new ArrayList<>(children);
 	}
 
+	/**
+	 * Gets the children of this parse node as a read-only view of the
+	 * internal list, without copying it
+	 */
+	public List<Node> children() {
+		return Collections.unmodifiableList(children);
+	}
+
+	/**
+	 * Gets the number of children of this parse node
+	 */
+	public int childCount() {
+		return children.size();
+	}
+
+	/**
+	 * Gets a child of this parse node
+	 * @param index The position of the child, from 0
+	 */
+	public Node child(final int index) {
+		return children.get(index);
+	}
+
 	/**
 	 * Gets the value of this parse node
 	 */
@@ -50,11 +84,12 @@ public class Node {
 	}
 
 	/**
-	 * Gets the token name associated to this parse node
+	 * Gets the token name associated to this parse node. For a terminal that
+	 * refers to its input, the text is copied out of the input on every call.
 	 */
 	public String getToken()
 	{
-		return token;
+		return token != null || source == null ? token : source.subSequence(start, end).toString();
 	}
 	/**
 	 * Sets the token name for this parse node
@@ -62,6 +97,102 @@ public class Node {
 	public void setToken(final String token)
 	{
 		this.token = token;
+		this.source = null;
+	}
+
+	/**
+	 * Makes the token of this node the text of the input between two
+	 * offsets. The text stays in the input until it is asked for.
+	 * @return this
+	 */
+	public Node setText(final CharSequence source, final int start, final int end) {
+		this.token = null;
+		this.source = source;
+		return setSpan(start, end);
+	}
+
+	// The input the token of this node is taken from, or null when it has its own token
+	CharSequence getSource() {
+		return source;
+	}
+
+	/**
+	 * Gets the text of the input this node matched, without copying it when
+	 * the input allows that. A node without its own input takes it from its
+	 * first child.
+	 * @return The text, or <tt>null</tt> if the node doesn't refer to its input
+	 */
+	public CharSequence getText() {
+		Node node = this;
+		while (node.source == null && !node.children.isEmpty()) node = node.children.get(0);
+		return node.source == null ? null : node.source.subSequence(getStart(), getEnd());
+	}
+
+	/**
+	 * Gets the offset in the input of the first character this node matched.
+	 * A node without its own offsets starts where its first child starts.
+	 */
+	public int getStart() {
+		Node node = this;
+		while (node.start < 0 && !node.children.isEmpty()) node = node.children.get(0);
+		return Math.max(node.start, 0);
+	}
+
+	/**
+	 * Gets the offset in the input after the last character this node matched.
+	 * A node without its own offsets ends where its last child ends.
+	 */
+	public int getEnd() {
+		Node node = this;
+		while (node.end < 0 && !node.children.isEmpty()) node = node.children.get(node.children.size() - 1);
+		return Math.max(node.end, 0);
+	}
+
+	// Whether this node has its own offsets, instead of those of its children
+	boolean hasSpan() {
+		return start >= 0;
+	}
+
+	/**
+	 * Sets the offsets in the input this node matched
+	 * @return this
+	 */
+	public Node setSpan(final int start, final int end) {
+		this.start = start;
+		this.end = end;
+		return this;
+	}
+
+	/**
+	 * Moves the offsets of this node, and of the nodes below it, by a number
+	 * of characters into another version of the input. A node that is more
+	 * than once below this one, like the nodes a memoizing parser shares, is
+	 * moved once.
+	 * @param source The new version of the input
+	 */
+	public void moveSpan(final CharSequence source, final int delta) {
+		moveSpan(source, delta, Collections.newSetFromMap(new IdentityHashMap<>()));
+	}
+
+	/**
+	 * Moves the offsets like {@link #moveSpan(CharSequence, int)}, for nodes
+	 * that share some of the nodes below them
+	 * @param moved The nodes moved already, which are skipped. The nodes this
+	 *   call moves are added to it.
+	 */
+	public void moveSpan(final CharSequence source, final int delta, final Set<Node> moved) {
+		final var todo = new ArrayDeque<Node>();
+		todo.push(this);
+		while (!todo.isEmpty()) {
+			final var node = todo.pop();
+			if (!moved.add(node)) continue;
+			if (node.start >= 0) {
+				node.start += delta;
+				node.end += delta;
+			}
+			if (node.source != null) node.source = source;
+			for (final var child : node.children) todo.push(child);
+		}
 	}
 
 	/**
@@ -73,6 +204,15 @@ public class Node {
 		return this;
 	}
 
+	/**
+	 * Replaces a child of this parse node
+	 * @return this
+	 */
+	public Node setChild(final int index, final Node child) {
+		children.set(index, child);
+		return this;
+	}
+
 	@Override
 	public String toString()
 	{
@@ -86,10 +226,10 @@ public class Node {
 	 */
 	private String toString(final String indent) {
 		StringBuilder out = new StringBuilder();
-		out.append(indent).append(token).append("\n");
+		out.append(indent).append(getToken()).append("\n");
 
 		final String n_indent = indent + SPACE;
-		for (final Node n : children) {
+		for (final Node n : children()) {
 			out.append(n.toString(n_indent));
 		}
 		return out.toString();
@@ -101,26 +241,26 @@ public class Node {
 	 */
 	public int getSize() {
 		int size = 1;
-		for (final var node : children) {
+		for (final var node : children()) {
 			size += node.getSize();
 		}
 		return size;
 	}
 
+	/**
+	 * Visits the nodes of this tree, every node after its children. The tree
+	 * is walked with an explicit stack, see {@link TreeWalker}.
+	 */
 	public void postfixAccept(final ParseNodeVisitor visitor) throws VisitException {
-		for (final var node : children) {
-			node.postfixAccept(visitor);
-		}
-		visitor.visit(this);
-		visitor.pop();
+		TreeWalker.postfix(this).walk(visitor);
 	}
 
+	/**
+	 * Visits the nodes of this tree, every node before its children. The tree
+	 * is walked with an explicit stack, see {@link TreeWalker}.
+	 */
 	public void prefixAccept(final ParseNodeVisitor visitor) throws VisitException {
-		visitor.visit(this);
-		for (final var node : children) {
-			node.prefixAccept(visitor);
-		}
-		visitor.pop();
+		TreeWalker.prefix(this).walk(visitor);
 	}
 
 }
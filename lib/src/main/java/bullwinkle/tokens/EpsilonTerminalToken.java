@@ -22,6 +22,12 @@ public class EpsilonTerminalToken extends TerminalToken {
 		return 0;
 	}
 
+	@Override
+	public int match(final CharSequence input, final int offset)
+	{
+		return 0;
+	}
+
 	@Override
 	public String toString()
 	{
@@ -0,0 +1,123 @@
+package bullwinkle.tokens;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * A terminal that matches one of several literals, like the alternatives
+ * <tt>&lt;keyword&gt; := if | else | while</tt>. The literals are kept in a
+ * character trie, so the input is read once and without allocating, instead
+ * of comparing every literal in turn.
+ * <p>
+ * When several literals match, the one declared first wins, just like it
+ * does for alternatives. The name is the literals separated by <tt> | </tt>,
+ * so a rule prints the same after its alternatives were merged.
+ */
+public class LiteralSetTerminalToken extends TerminalToken {
+
+	private final List<String> literals;
+
+	// The trie, node 0 is the root. The labels of the children of a node are sorted.
+	private final char[][] labels;
+	private final int[][] children;
+	// The index of the literal that ends at a node, or -1
+	private final int[] ends;
+
+	public LiteralSetTerminalToken(final List<String> literals) {
+		super(literals.stream().collect(joining(" | ")));
+		this.literals = List.copyOf(literals);
+
+		final var nodes = new ArrayList<TreeMap<Character, Integer>>();
+		final var literalEnds = new ArrayList<Integer>();
+		nodes.add(new TreeMap<>());
+		literalEnds.add(-1);
+		for (int i = 0; i < this.literals.size(); i++) {
+			int node = 0;
+			for (final char c : this.literals.get(i).toCharArray()) {
+				var child = nodes.get(node).get(c);
+				if (child == null) {
+					child = nodes.size();
+					nodes.get(node).put(c, child);
+					nodes.add(new TreeMap<>());
+					literalEnds.add(-1);
+				}
+				node = child;
+			}
+			// A literal that is declared twice matches as the first one
+			if (literalEnds.get(node) < 0) literalEnds.set(node, i);
+		}
+
+		labels = new char[nodes.size()][];
+		children = new int[nodes.size()][];
+		ends = new int[nodes.size()];
+		for (int n = 0; n < nodes.size(); n++) {
+			final var edges = nodes.get(n);
+			labels[n] = new char[edges.size()];
+			children[n] = new int[edges.size()];
+			int i = 0;
+			for (final var edge : edges.entrySet()) {
+				labels[n][i] = edge.getKey();
+				children[n][i++] = edge.getValue();
+			}
+			ends[n] = literalEnds.get(n);
+		}
+	}
+
+	/**
+	 * Gets the literals, in the order they are preferred
+	 */
+	public List<String> getLiterals() {
+		return literals;
+	}
+
+	/**
+	 * Finds the literal that matches the input at some offset
+	 * @return The index of the first declared literal that matches, or -1
+	 */
+	public int matchIndex(final CharSequence input, final int offset) {
+		int best = -1;
+		int node = 0;
+		for (int pos = offset; ; pos++) {
+			final int end = ends[node];
+			if (end >= 0 && (best < 0 || end < best)) best = end;
+			if (pos >= input.length()) break;
+			final int i = Arrays.binarySearch(labels[node], input.charAt(pos));
+			if (i < 0) break;
+			node = children[node][i];
+		}
+		return best;
+	}
+
+	/**
+	 * Finds the longest literal that matches the input at some offset
+	 * @return The index of the literal, or -1
+	 */
+	public int longestIndex(final CharSequence input, final int offset) {
+		int longest = -1;
+		int node = 0;
+		for (int pos = offset; ; pos++) {
+			if (ends[node] >= 0) longest = ends[node];
+			if (pos >= input.length()) break;
+			final int i = Arrays.binarySearch(labels[node], input.charAt(pos));
+			if (i < 0) break;
+			node = children[node][i];
+		}
+		return longest;
+	}
+
+	@Override
+	public int match(final String s) {
+		return match(s, 0);
+	}
+
+	@Override
+	public int match(final CharSequence input, final int offset) {
+		final int index = matchIndex(input, offset);
+		return index < 0 ? 0 : literals.get(index).length();
+	}
+
+}
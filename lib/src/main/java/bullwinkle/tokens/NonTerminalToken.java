@@ -1,7 +1,12 @@
 package bullwinkle.tokens;
 
+import bullwinkle.BnfRule;
+
 public class NonTerminalToken extends Token {
 
+	// The rule this token refers to, set when the parser is built
+	private BnfRule rule;
+
 	public NonTerminalToken()
 	{
 		super();
@@ -12,6 +17,25 @@ public class NonTerminalToken extends Token {
 		super(name);
 	}
 
+	/**
+	 * Gets the rule this token refers to
+	 * @return The rule, or <tt>null</tt> if the token was not resolved
+	 */
+	public BnfRule getRule()
+	{
+		return rule;
+	}
+
+	/**
+	 * Links this token to the rule it refers to
+	 * @throws IllegalStateException If the token belongs to a built parser
+	 */
+	public void resolve(final BnfRule rule)
+	{
+		if (isFrozen()) throw new IllegalStateException("Token " + name + " belongs to a built parser and can't be changed");
+		this.rule = rule;
+	}
+
 	@Override
 	public boolean matches(final Token token)
 	{
@@ -23,4 +47,10 @@ public class NonTerminalToken extends Token {
 	{
 		return 0;
 	}
+
+	@Override
+	public int match(final CharSequence input, final int offset)
+	{
+		return 0;
+	}
 }
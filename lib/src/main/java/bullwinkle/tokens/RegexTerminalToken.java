@@ -1,12 +1,22 @@
 package bullwinkle.tokens;
 
+import bullwinkle.util.StreamingInput;
+
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class RegexTerminalToken extends TerminalToken {
 
 	private Pattern pattern;
+	// Matching starts at the offset, instead of searching from it
+	private boolean anchored;
+	// The matcher of each thread, with the outcome of its last match
+	private ThreadLocal<Scratch> scratch;
+	// The matchers of the current thread that refer to an input, of every token
+	private static final ThreadLocal<List<Scratch>> holding = ThreadLocal.withInitial(ArrayList::new);
 
 	protected RegexTerminalToken()
 	{
@@ -14,18 +24,39 @@ public class RegexTerminalToken extends TerminalToken {
 	}
 
 	/**
-	 * Creates a new terminal token
+	 * Creates a new terminal token that searches for a match from the
+	 * offset it is matched at
 	 * @param name The regular expression that matches this token
 	 */
 	public RegexTerminalToken(final String name)
+	{
+		this(name, false);
+	}
+
+	/**
+	 * Creates a new terminal token
+	 * @param name The regular expression that matches this token
+	 * @param anchored true if a match must start at the offset the token is
+	 *   matched at. The input after the offset is then not searched, which
+	 *   makes matching independent of the length of the input. For a regex
+	 *   that starts with <tt>^</tt> the outcome is the same.
+	 */
+	public RegexTerminalToken(final String name, final boolean anchored)
 	{
 		super(name);
+		this.anchored = anchored;
 	}
 
 	@Override
 	public void setName(final String name) {
 		super.setName(name);
-		pattern = Pattern.compile(name);
+		final var compiled = Pattern.compile(name);
+		pattern = compiled;
+		scratch = ThreadLocal.withInitial(() -> new Scratch(compiled.matcher("")));
+	}
+
+	public boolean isAnchored() {
+		return anchored;
 	}
 
 	@Override
@@ -36,7 +67,31 @@ public class RegexTerminalToken extends TerminalToken {
 	@Override
 	public int match(final String name) {
 		final var matcher = pattern.matcher(name);
-		return matcher.find() ? matcher.end() : -1;
+		return (anchored ? matcher.lookingAt() : matcher.find()) ? matcher.end() : -1;
+	}
+
+	/**
+	 * Matches the regex at some offset. The matcher of the current thread is
+	 * reused, and it keeps the capture blocks of the match for
+	 * {@link #getCaptureBlocks(CharSequence, int, int)}.
+	 */
+	@Override
+	public int match(final CharSequence input, final int offset) {
+		final var state = scratch.get();
+		var matcher = state.region(input, offset, input.length());
+		boolean found = anchored ? matcher.lookingAt() : matcher.find();
+		// A streaming input grows until more text can't change the match
+		while (matcher.hitEnd() && input instanceof StreamingInput stream && stream.grow()) {
+			matcher = state.region(input, offset, input.length());
+			found = anchored ? matcher.lookingAt() : matcher.find();
+		}
+		if (!found) {
+			state.end = -1;
+			return -1;
+		}
+		state.start = offset;
+		state.end = matcher.end();
+		return matcher.end() - offset;
 	}
 
 	@Override
@@ -59,7 +114,69 @@ public class RegexTerminalToken extends TerminalToken {
 		}
 		return out;
 	}
-	
+
+	/**
+	 * Returns the content of each capture block in the regex, matched against
+	 * the part of the input between two offsets
+	 * @param input The input
+	 * @param start The start of the matched text
+	 * @param end The end of the matched text
+	 * @return A list of strings, each of which is the content of a capture block
+	 */
+	public List<String> getCaptureBlocks(final CharSequence input, final int start, final int end) {
+		final var out = new LinkedList<String>();
+		final var state = scratch.get();
+		if (state.matcher.groupCount() == 0) return out;
+
+		// The groups of the last match on this thread are still there when it matched the same text
+		Matcher matcher = state.matcher;
+		if (state.input != input || state.start != start || state.end != end) {
+			matcher = state.region(input, start, end);
+			if (!(anchored ? matcher.lookingAt() : matcher.find())) return out;
+		}
+		for (int i = 1; i <= matcher.groupCount(); i++) {
+			out.add(matcher.group(i));
+		}
+		return out;
+	}
+
+	/**
+	 * Drops the input the matchers of the current thread refer to. The engines
+	 * call it when a run finishes, so that a pooled thread does not keep the
+	 * last input it parsed, and the text of its matcher, alive.
+	 */
+	public static void releaseInput() {
+		final var list = holding.get();
+		for (final var state : list) {
+			state.matcher.reset("");
+			state.input = null;
+			state.start = 0;
+			state.end = -1;
+		}
+		list.clear();
+	}
+
+	private static final class Scratch {
+		final Matcher matcher;
+		CharSequence input;
+		// The offsets of the last match, end is -1 if it failed
+		int start, end = -1;
+
+		Scratch(final Matcher matcher) {
+			this.matcher = matcher;
+		}
+
+		Matcher region(final CharSequence text, final int from, final int to) {
+			if (input != text) {
+				if (input == null) holding.get().add(this);
+				matcher.reset(text);
+				input = text;
+			}
+			end = -1;
+			return matcher.region(from, to);
+		}
+	}
+
 	@Override
 	public int hashCode()
 	{
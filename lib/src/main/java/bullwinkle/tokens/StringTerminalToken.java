@@ -22,4 +22,12 @@ public class StringTerminalToken extends TerminalToken {
 	public int match(final String input) {
 		return input == null ? 0 : input.indexOf(' ');
 	}
+
+	@Override
+	public int match(final CharSequence input, final int offset) {
+		for (int i = offset; i < input.length(); i++) {
+			if (input.charAt(i) == ' ') return i - offset;
+		}
+		return -1;
+	}
 }
@@ -29,6 +29,18 @@ public class TerminalToken extends Token {
 		return 0;
 	}
 
+	@Override
+	public int match(final CharSequence input, final int offset) {
+		final var name = getName();
+		if (input.length() - offset < name.length()) {
+			return -1;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			if (input.charAt(offset + i) != name.charAt(i)) return 0;
+		}
+		return name.length();
+	}
+
 	@Override
 	public boolean equals(final Object o) {
 		if (!(o instanceof TerminalToken)) return false;
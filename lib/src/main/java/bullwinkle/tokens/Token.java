@@ -2,6 +2,8 @@ package bullwinkle.tokens;
 
 public abstract class Token {
 	protected String name;
+	// Whether the token belongs to a built parser, and can no longer change
+	private boolean frozen;
 
 	public Token()
 	{
@@ -14,12 +16,30 @@ public abstract class Token {
 	public String getName() {
 		return name;
 	}
+	/**
+	 * Sets the name of the token
+	 * @throws IllegalStateException If the token belongs to a built parser
+	 */
 	public void setName(final String name) {
+		if (frozen) throw new IllegalStateException("Token " + this.name + " belongs to a built parser and can't be changed");
 		if (name != null) {
 			this.name = name;
 		}
 	}
 
+	/**
+	 * Stops the token from changing once it belongs to a built parser. A
+	 * terminal is shared with the rules the parser was built from, so they
+	 * can't rename it either.
+	 */
+	public void freeze() {
+		frozen = true;
+	}
+
+	public boolean isFrozen() {
+		return frozen;
+	}
+
 	@Override
 	public String toString()
 	{
@@ -41,4 +61,15 @@ public abstract class Token {
 	public abstract boolean matches(final Token tok);
 
 	public abstract int match(final String s);
+
+	/**
+	 * Matches this token against the input at some offset, without copying
+	 * the input. The default implementation falls back on {@link #match(String)}.
+	 * @param input The input
+	 * @param offset The offset in the input where the token must start
+	 * @return The number of characters matched, 0 or less if there is no match
+	 */
+	public int match(final CharSequence input, final int offset) {
+		return match(input.subSequence(offset, input.length()).toString());
+	}
 }
@@ -1,13 +1,17 @@
 package bullwinkle.tokens;
 
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.ListIterator;
 import java.util.Set;
 
 import static bullwinkle.Constants.SPACE;
 
 /**
- * An ordered sequence of tokens
+ * An ordered sequence of tokens. Once it belongs to a built parser, it is
+ * frozen: every method that changes it throws an {@link IllegalStateException}.
  */
 public class TokenString extends LinkedList<Token> {
 
@@ -16,6 +20,8 @@ public class TokenString extends LinkedList<Token> {
 	 * alternatives for a rule
 	 */
 	private boolean tryLast = false;
+	// Whether the string belongs to a built parser, and can no longer change
+	private boolean frozen;
 
 	public TokenString() {}
 	public TokenString(final Token token) {
@@ -37,9 +43,187 @@ public class TokenString extends LinkedList<Token> {
 	 */
 	public void setTryLast(boolean b)
 	{
+		checkNotFrozen();
 		tryLast = b;
 	}
 
+	/**
+	 * Stops the string, its tokens and the links of its non-terminals to
+	 * their rules from changing once it belongs to a built parser
+	 */
+	public void freeze() {
+		for (final var token : this) token.freeze();
+		frozen = true;
+	}
+
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) throw new IllegalStateException("Alternative " + this + " belongs to a built parser and can't be changed");
+	}
+
+	@Override
+	public boolean add(final Token token) {
+		checkNotFrozen();
+		return super.add(token);
+	}
+	@Override
+	public void add(final int index, final Token token) {
+		checkNotFrozen();
+		super.add(index, token);
+	}
+	@Override
+	public boolean addAll(final Collection<? extends Token> tokens) {
+		checkNotFrozen();
+		return super.addAll(tokens);
+	}
+	@Override
+	public boolean addAll(final int index, final Collection<? extends Token> tokens) {
+		checkNotFrozen();
+		return super.addAll(index, tokens);
+	}
+	@Override
+	public void addFirst(final Token token) {
+		checkNotFrozen();
+		super.addFirst(token);
+	}
+	@Override
+	public void addLast(final Token token) {
+		checkNotFrozen();
+		super.addLast(token);
+	}
+	@Override
+	public Token set(final int index, final Token token) {
+		checkNotFrozen();
+		return super.set(index, token);
+	}
+	@Override
+	public Token remove() {
+		checkNotFrozen();
+		return super.remove();
+	}
+	@Override
+	public Token remove(final int index) {
+		checkNotFrozen();
+		return super.remove(index);
+	}
+	@Override
+	public boolean remove(final Object token) {
+		checkNotFrozen();
+		return super.remove(token);
+	}
+	@Override
+	public Token removeFirst() {
+		checkNotFrozen();
+		return super.removeFirst();
+	}
+	@Override
+	public Token removeLast() {
+		checkNotFrozen();
+		return super.removeLast();
+	}
+	@Override
+	public boolean removeLastOccurrence(final Object token) {
+		checkNotFrozen();
+		return super.removeLastOccurrence(token);
+	}
+	@Override
+	public Token poll() {
+		checkNotFrozen();
+		return super.poll();
+	}
+	@Override
+	public Token pollFirst() {
+		checkNotFrozen();
+		return super.pollFirst();
+	}
+	@Override
+	public Token pollLast() {
+		checkNotFrozen();
+		return super.pollLast();
+	}
+	@Override
+	public void clear() {
+		checkNotFrozen();
+		super.clear();
+	}
+
+	// The other changes, like removeIf, sort or those of a sublist, go through the iterators
+	@Override
+	public ListIterator<Token> listIterator(final int index) {
+		final var iterator = super.listIterator(index);
+		if (!frozen) return iterator;
+		return new ListIterator<>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+			@Override
+			public Token next() {
+				return iterator.next();
+			}
+			@Override
+			public boolean hasPrevious() {
+				return iterator.hasPrevious();
+			}
+			@Override
+			public Token previous() {
+				return iterator.previous();
+			}
+			@Override
+			public int nextIndex() {
+				return iterator.nextIndex();
+			}
+			@Override
+			public int previousIndex() {
+				return iterator.previousIndex();
+			}
+			@Override
+			public void remove() {
+				checkNotFrozen();
+			}
+			@Override
+			public void set(final Token token) {
+				checkNotFrozen();
+			}
+			@Override
+			public void add(final Token token) {
+				checkNotFrozen();
+			}
+		};
+	}
+	@Override
+	public Iterator<Token> descendingIterator() {
+		final var iterator = super.descendingIterator();
+		if (!frozen) return iterator;
+		return new Iterator<>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+			@Override
+			public Token next() {
+				return iterator.next();
+			}
+			@Override
+			public void remove() {
+				checkNotFrozen();
+			}
+		};
+	}
+
+	/**
+	 * Creates a copy of this token string, which is not frozen
+	 */
+	@Override
+	public TokenString clone() {
+		final var copy = getCopy();
+		copy.tryLast = tryLast;
+		return copy;
+	}
+
 	/**
 	 * Creates a copy of this token string
 	 * @return The copy
@@ -0,0 +1,65 @@
+package bullwinkle.util;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * The bytes of a buffer read as characters, one byte per character, without
+ * copying them. For a memory-mapped file this keeps the input out of the
+ * heap. It is only correct for single-byte text, like ASCII.
+ */
+public final class ByteBufferInput implements CharSequence {
+
+	private final ByteBuffer buffer;
+	private final int start;
+	private final int length;
+
+	public ByteBufferInput(final ByteBuffer buffer) {
+		this(buffer, buffer.position(), buffer.remaining());
+	}
+
+	private ByteBufferInput(final ByteBuffer buffer, final int start, final int length) {
+		this.buffer = buffer;
+		this.start = start;
+		this.length = length;
+	}
+
+	/**
+	 * Checks whether all bytes of a buffer are ASCII characters
+	 */
+	public static boolean isAscii(final ByteBuffer buffer) {
+		for (int i = buffer.position(); i < buffer.limit(); i++) {
+			if (buffer.get(i) < 0) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(final int index) {
+		if (index < 0 || index >= length) throw new IndexOutOfBoundsException(index);
+		return (char) (buffer.get(start + index) & 0xFF);
+	}
+
+	/**
+	 * Gets a view on part of the input, the bytes are not copied
+	 */
+	@Override
+	public CharSequence subSequence(final int from, final int to) {
+		if (from < 0 || from > to || to > length) throw new IndexOutOfBoundsException(to);
+		return new ByteBufferInput(buffer, start + from, to - from);
+	}
+
+	@Override
+	public String toString() {
+		final var bytes = new byte[length];
+		buffer.get(start, bytes);
+		return new String(bytes, ISO_8859_1);
+	}
+
+}
@@ -0,0 +1,76 @@
+package bullwinkle.util;
+
+import bullwinkle.BnfRule;
+import bullwinkle.ParseTracer;
+import bullwinkle.tokens.Token;
+import bullwinkle.tokens.TokenString;
+
+import java.util.logging.Logger;
+
+import static bullwinkle.util.Functions.indent;
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Level.SEVERE;
+
+/**
+ * A tracer that writes the parsing steps to a {@link Logger}. Progress is
+ * logged at level FINE, failures at level SEVERE. Messages are only built
+ * when the logger accepts their level.
+ */
+public final class LoggingParseTracer implements ParseTracer {
+
+	private final Logger logger;
+
+	public LoggingParseTracer(final Logger logger) {
+		this.logger = logger;
+	}
+
+	/**
+	 * Gets a tracer that logs to the given logger, or {@link ParseTracer#NONE}
+	 * if the logger is switched off
+	 */
+	public static ParseTracer forLogger(final Logger logger) {
+		return logger != null && logger.isLoggable(SEVERE) ? new LoggingParseTracer(logger) : NONE;
+	}
+
+	@Override
+	public void enterRule(final BnfRule rule, final ParseInput input, final int offset, final int level) {
+		if (!logger.isLoggable(FINE)) return;
+		logger.log(FINE, indent(level, "Considering input '" + remaining(input, offset) + "' with rule " + rule));
+	}
+
+	@Override
+	public void tryAlternative(final BnfRule rule, final TokenString alternative, final int level) {
+		if (!logger.isLoggable(FINE)) return;
+		logger.log(FINE, indent(level, "Alternative " + alternative));
+	}
+
+	@Override
+	public void failAlternative(final BnfRule rule, final TokenString alternative, final Token token,
+								final int offset, final int level) {
+		if (!logger.isLoggable(SEVERE)) return;
+		logger.log(SEVERE, indent(level, "FAILED parsing with case " + alternative + " at token " + token));
+	}
+
+	@Override
+	public void missingSymbols(final BnfRule rule, final TokenString alternative, final int level) {
+		if (!logger.isLoggable(FINE)) return;
+		logger.log(FINE, indent(level, "No symbols left in input; will explore next alternative"));
+	}
+
+	@Override
+	public void fail(final BnfRule rule, final ParseInput input, final int offset, final int level,
+					 final Failure reason) {
+		if (!logger.isLoggable(SEVERE)) return;
+		logger.log(SEVERE, indent(level, switch (reason) {
+			case NO_MATCHING_ALTERNATIVE -> "FAILED: expected more symbols with rule " + rule;
+			case NOTHING_CONSUMED -> "FAILED: did not consume anything of " + remaining(input, offset) + " with rule " + rule;
+			case INPUT_REMAINING -> "FAILED: The top-level rule must parse the complete string";
+		}));
+	}
+
+	// The input left after an offset, copied for the message
+	private static String remaining(final ParseInput input, final int offset) {
+		return input.substring(Math.min(offset, input.length()), input.length());
+	}
+
+}
@@ -0,0 +1,63 @@
+package bullwinkle.util;
+
+import bullwinkle.BnfRule;
+import bullwinkle.nodes.Node;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded packrat memo table. For every (rule, input offset) pair it
+ * remembers the outcome of parsing that rule at that offset: either the
+ * resulting parse node, or a failure. Once the table holds more than its
+ * maximum number of entries the least recently used entry is dropped.
+ */
+public final class MemoTable extends LinkedHashMap<MemoTable.Key, MemoTable.Entry> {
+
+	private static final Entry FAILURE = new Entry(null, 0);
+
+	private final int maxEntries;
+
+	/**
+	 * Creates a memo table for a single parse
+	 * @param maxEntries The maximum number of outcomes to remember
+	 */
+	public MemoTable(final int maxEntries) {
+		super(16, 0.75f, true);
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Gets the memoized outcome for a rule at some offset
+	 * @return The entry, or <tt>null</tt> if nothing was memoized
+	 */
+	public Entry lookup(final BnfRule rule, final int offset) {
+		return get(new Key(rule, offset));
+	}
+
+	public void success(final BnfRule rule, final int offset, final Node node, final int consumed) {
+		put(new Key(rule, offset), new Entry(node, consumed));
+	}
+
+	public void failure(final BnfRule rule, final int offset) {
+		put(new Key(rule, offset), FAILURE);
+	}
+
+	@Override
+	protected boolean removeEldestEntry(final Map.Entry<Key, Entry> eldest) {
+		return size() > maxEntries;
+	}
+
+	public record Key(BnfRule rule, int offset) {}
+
+	/**
+	 * The outcome of a memoized parse. A <tt>null</tt> node means the
+	 * rule failed at this offset.
+	 */
+	public record Entry(Node node, int consumed) {
+		public boolean isFailure() {
+			return node == null;
+		}
+	}
+
+}
@@ -55,7 +55,7 @@ public enum NodePath {;
 		if (path.size() == 1 && path.get(0).compareTo("*") == 0)
 		{
 			// Return all children
-			out.addAll(n.getChildren());
+			out.addAll(n.children());
 			return out;
 		}
 		String path_el = path.get(0);
@@ -71,7 +71,7 @@ public enum NodePath {;
 		{
 			el_card = Integer.parseInt(el_card_s);
 		}
-		List<Node> children = n.getChildren();
+		List<Node> children = n.children();
 		int i = 0;
 		for (Node child : children)
 		{
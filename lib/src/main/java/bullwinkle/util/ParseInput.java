@@ -0,0 +1,163 @@
+package bullwinkle.util;
+
+import bullwinkle.lexer.Lexemes;
+import bullwinkle.lexer.Lexer;
+import bullwinkle.tokens.Token;
+
+/**
+ * The immutable text being parsed. The parser never copies or modifies it,
+ * it only moves integer offsets over it, and backtracking restores an
+ * earlier offset. Whitespace at the end of the text is not part of the input:
+ * terminals are matched against the text up to the last other character,
+ * like on a trimmed string. A {@link StreamingInput} is loaded as the parser
+ * gets to its end.
+ */
+public final class ParseInput {
+
+	// The number of characters a streaming input keeps loaded after an offset
+	// the parser looks at, no literal of a grammar may be longer
+	private static final int LOOKAHEAD = 4096;
+
+	private final CharSequence text;
+	// The text terminals are matched against, without the whitespace at its end
+	private final CharSequence matched;
+	// The same text when it is read from a stream, or null
+	private final StreamingInput stream;
+	// The lexemes of the text, when the grammar uses a lexer
+	private final Lexemes lexemes;
+
+	public ParseInput(final CharSequence text) {
+		this(text, null);
+	}
+
+	/**
+	 * Creates the input, and splits it into lexemes right away
+	 * @param lexer The lexer, or <tt>null</tt> to match terminals against the characters
+	 */
+	public ParseInput(final CharSequence text, final Lexer lexer) {
+		this.text = text;
+		this.stream = text instanceof StreamingInput streaming ? streaming : null;
+		// A streaming input drops the whitespace at its end itself
+		this.matched = stream != null ? stream : Trimmed.of(text);
+		if (stream != null && lexer != null) stream.loadAll();
+		this.lexemes = lexer == null ? null : lexer.tokenize(matched);
+	}
+
+	public CharSequence getText() {
+		return text;
+	}
+
+	public int length() {
+		return text.length();
+	}
+
+	public char charAt(final int offset) {
+		return text.charAt(offset);
+	}
+
+	/**
+	 * Checks whether there is no input left at some offset
+	 */
+	public boolean isEnd(final int offset) {
+		load(offset);
+		return offset >= matched.length();
+	}
+
+	/**
+	 * Skips the whitespace at some offset, using the same definition of
+	 * whitespace as {@link String#trim()}
+	 * @return The offset of the first non-whitespace character, or the
+	 *   length of the input if only whitespace is left
+	 */
+	public int skipWhitespace(int offset) {
+		load(offset);
+		int length = text.length();
+		while (offset < length && text.charAt(offset) <= ' ') {
+			if (++offset == length) length = load(offset);
+		}
+		return offset;
+	}
+
+	/**
+	 * Matches a terminal token at some offset
+	 * @return The number of characters matched, 0 or less if there is no match
+	 */
+	public int match(final Token token, final int offset) {
+		load(offset);
+		return lexemes != null ? lexemes.match(token, offset) : token.match(matched, offset);
+	}
+
+	/**
+	 * Checks if the input contains a string at some offset
+	 */
+	public boolean startsWith(final String s, final int offset) {
+		load(offset + s.length());
+		if (offset + s.length() > matched.length()) return false;
+		for (int i = 0; i < s.length(); i++) {
+			if (text.charAt(offset + i) != s.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Makes sure a streaming input has the characters after an offset loaded
+	 * @return The length of the input loaded so far
+	 */
+	private int load(final int offset) {
+		if (stream != null && offset > text.length() - LOOKAHEAD) {
+			stream.fill((int) Math.min(Integer.MAX_VALUE, (long) offset + LOOKAHEAD));
+		}
+		return text.length();
+	}
+
+	/**
+	 * Checks whether the text stays available after parsing, so the parse
+	 * tree can refer to it instead of copying it. A streaming input releases
+	 * its text as the parser moves on.
+	 */
+	public boolean keepsText() {
+		return stream == null;
+	}
+
+	/**
+	 * Gets the text between two offsets as a new string
+	 */
+	public String substring(final int start, final int end) {
+		return text.subSequence(start, end).toString();
+	}
+
+	@Override
+	public String toString() {
+		return text.toString();
+	}
+
+	/**
+	 * A text without the whitespace at its end, which refers to the text
+	 * instead of copying it
+	 */
+	private record Trimmed(CharSequence text, int length) implements CharSequence {
+		static CharSequence of(final CharSequence text) {
+			int end = text.length();
+			while (end > 0 && text.charAt(end - 1) <= ' ') end--;
+			return end == text.length() ? text : new Trimmed(text, end);
+		}
+
+		@Override
+		public char charAt(final int index) {
+			if (index >= length) throw new IndexOutOfBoundsException(index);
+			return text.charAt(index);
+		}
+
+		@Override
+		public CharSequence subSequence(final int start, final int end) {
+			if (end > length) throw new IndexOutOfBoundsException(end);
+			return text.subSequence(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return text.subSequence(0, length).toString();
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+package bullwinkle.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+
+/**
+ * The text read from a {@link Reader}, loaded in chunks as the parser gets to
+ * it. The text before an offset can be released once the parser will never
+ * go back to it, so only a window of the input is in memory.
+ * <p>
+ * {@link #length()} is the number of characters loaded so far, the length
+ * of the input once the reader is exhausted. The whitespace at the end of the
+ * input is then dropped, like {@link ParseInput} ignores it. Errors of the
+ * reader are thrown as an {@link UncheckedIOException}.
+ */
+public final class StreamingInput implements CharSequence {
+
+	private static final int CHUNK = 64 * 1024;
+
+	private final Reader reader;
+	private char[] buffer = new char[CHUNK];
+	// The offset of the first character in the buffer
+	private int base;
+	// The number of characters in the buffer
+	private int size;
+	private boolean exhausted;
+
+	public StreamingInput(final Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Loads characters until the input is at least some length, or the reader
+	 * is exhausted
+	 */
+	public void fill(final int length) {
+		while (!exhausted && base + size < length) readChunk();
+	}
+
+	/**
+	 * Loads the next chunk of characters
+	 * @return false if the reader is exhausted
+	 */
+	public boolean grow() {
+		if (exhausted) return false;
+		final int before = size;
+		readChunk();
+		return size > before || !exhausted;
+	}
+
+	/**
+	 * Loads the rest of the input
+	 */
+	public void loadAll() {
+		while (!exhausted) readChunk();
+	}
+
+	public boolean isExhausted() {
+		return exhausted;
+	}
+
+	/**
+	 * Drops the characters before an offset. Reading them afterwards fails.
+	 */
+	public void release(final int offset) {
+		final int drop = Math.min(offset, base + size) - base;
+		// Only move the characters when it frees a good part of the buffer
+		if (drop <= 0 || drop < size / 2) return;
+		System.arraycopy(buffer, drop, buffer, 0, size - drop);
+		size -= drop;
+		base += drop;
+	}
+
+	private void readChunk() {
+		if (buffer.length - size < CHUNK / 2) {
+			final var grown = new char[Math.max(buffer.length * 2, size + CHUNK)];
+			System.arraycopy(buffer, 0, grown, 0, size);
+			buffer = grown;
+		}
+		try {
+			final int read = reader.read(buffer, size, buffer.length - size);
+			if (read < 0) {
+				exhausted = true;
+				while (size > 0 && buffer[size - 1] <= ' ') size--;
+			}
+			else size += read;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public int length() {
+		return base + size;
+	}
+
+	@Override
+	public char charAt(final int index) {
+		if (index >= base + size) fill(index + 1);
+		if (index < base) throw new IllegalStateException("The input before offset " + base + " was released");
+		if (index >= base + size) throw new IndexOutOfBoundsException(index);
+		return buffer[index - base];
+	}
+
+	@Override
+	public CharSequence subSequence(final int start, final int end) {
+		if (end > base + size) fill(end);
+		if (start < base) throw new IllegalStateException("The input before offset " + base + " was released");
+		if (start > end || end > base + size) throw new IndexOutOfBoundsException(end);
+		return new String(buffer, start - base, end - start);
+	}
+
+	/**
+	 * Gets the characters that are in memory
+	 */
+	@Override
+	public String toString() {
+		return new String(buffer, 0, size);
+	}
+
+}
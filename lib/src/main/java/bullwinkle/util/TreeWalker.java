@@ -0,0 +1,122 @@
+package bullwinkle.util;
+
+import bullwinkle.ParseNodeVisitor;
+import bullwinkle.error.VisitException;
+import bullwinkle.nodes.Node;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks a parse tree and sends the {@link ParseNodeVisitor#visit(Node) visit}
+ * and {@link ParseNodeVisitor#pop() pop} events to a visitor, in the same
+ * order as {@link Node#prefixAccept(ParseNodeVisitor)} and
+ * {@link Node#postfixAccept(ParseNodeVisitor)}. The nodes being walked are
+ * kept on an explicit stack, so the depth of the tree isn't limited by the
+ * call stack. The walk can stop after any number of events and continue
+ * later, for instance to write output as it is consumed.
+ */
+public final class TreeWalker {
+
+	private final boolean prefix;
+
+	// The stack of nodes being walked, with their children and the next child to walk
+	private Node[] nodes = new Node[16];
+	private List<?>[] children = new List<?>[16];
+	private int[] nextChild = new int[16];
+	private boolean[] visited = new boolean[16];
+	private int top;
+
+	private TreeWalker(final Node root, final boolean prefix) {
+		this.prefix = prefix;
+		nodes[0] = root;
+		children[0] = root.children();
+	}
+
+	/**
+	 * Creates a walker that visits a node before its children
+	 */
+	public static TreeWalker prefix(final Node root) {
+		return new TreeWalker(root, true);
+	}
+
+	/**
+	 * Creates a walker that visits a node after its children
+	 */
+	public static TreeWalker postfix(final Node root) {
+		return new TreeWalker(root, false);
+	}
+
+	/**
+	 * Checks whether there are events left
+	 */
+	public boolean hasNext() {
+		return top >= 0;
+	}
+
+	/**
+	 * Sends the next event to a visitor. In postfix order, a visit and the
+	 * pop that follows it count as one event.
+	 * @throws NoSuchElementException If the walk is done
+	 */
+	public void next(final ParseNodeVisitor visitor) throws VisitException {
+		if (!hasNext()) throw new NoSuchElementException("The tree was walked completely");
+		while (true) {
+			final var node = nodes[top];
+			if (!visited[top] && (prefix || nextChild[top] == children[top].size())) {
+				visited[top] = true;
+				visitor.visit(node);
+				if (!prefix) pop(visitor);
+				return;
+			}
+			if (nextChild[top] < children[top].size()) {
+				push((Node) children[top].get(nextChild[top]++));
+				continue;
+			}
+			pop(visitor);
+			return;
+		}
+	}
+
+	/**
+	 * Sends a number of events to a visitor, or fewer when the walk is done first
+	 * @return Whether there are events left
+	 */
+	public boolean walk(final ParseNodeVisitor visitor, final int maxEvents) throws VisitException {
+		for (int i = 0; i < maxEvents && hasNext(); i++) {
+			next(visitor);
+		}
+		return hasNext();
+	}
+
+	/**
+	 * Sends all remaining events to a visitor
+	 */
+	public void walk(final ParseNodeVisitor visitor) throws VisitException {
+		while (hasNext()) {
+			next(visitor);
+		}
+	}
+
+	private void push(final Node node) {
+		if (++top == nodes.length) {
+			nodes = Arrays.copyOf(nodes, top * 2);
+			children = Arrays.copyOf(children, top * 2);
+			nextChild = Arrays.copyOf(nextChild, top * 2);
+			visited = Arrays.copyOf(visited, top * 2);
+		}
+		nodes[top] = node;
+		children[top] = node.children();
+		nextChild[top] = 0;
+		visited[top] = false;
+	}
+
+	private void pop(final ParseNodeVisitor visitor) {
+		visitor.pop();
+		nodes[top] = null;
+		children[top] = null;
+		top--;
+	}
+
+}
@@ -3,10 +3,13 @@ package unittests;
 import static bullwinkle.BnfRule.parseRule;
 import static unittests.util.Functions.assertContains;
 import static unittests.util.Functions.assertSize;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Test;
 
 import bullwinkle.tokens.TerminalToken;
+import bullwinkle.tokens.TokenString;
 
 public class BnfRuleTest {
 
@@ -30,4 +33,21 @@ public class BnfRuleTest {
 		assertSize(alternatives, 7);
     }
 
+	@Test
+	public void alternativeTokensFollowAlternatives() {
+		final var rule = parseRule("<S> := a b || c", true);
+		assertSame(rule.getAlternatives(), rule.getAlternatives());
+		// The arrays are copies, changing them does not change the rule
+		rule.getAlternativeTokens()[0][0] = new TerminalToken("x");
+		assertEquals("a", rule.getAlternativeTokens()[0][0].getName());
+
+		rule.addAlternative(0, new TokenString(new TerminalToken("d")));
+		final var tokens = rule.getAlternativeTokens();
+
+		assertEquals(3, tokens.length);
+		assertEquals("d", tokens[0][0].getName());
+		assertEquals(2, tokens[1].length);
+		assertEquals("c", tokens[2][0].getName());
+	}
+
 }
@@ -0,0 +1,82 @@
+package unittests;
+
+import bullwinkle.RecordSplitter;
+import bullwinkle.error.ParsingFailed;
+import bullwinkle.nodes.Node;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static bullwinkle.BnfParserBuilder.newBnfParser;
+import static bullwinkle.RecordSplitter.afterLineBreak;
+import static org.junit.Assert.*;
+
+public class ChunkedTest {
+
+	private static final String RECORDS = """
+		<S> := <R> <S> | <R>
+		<R> := <key> = <value> ;
+		<key> := ^[a-z]+
+		<value> := ^[0-9]+
+		""";
+
+	@Test
+	public void smallInputIsOneChunk() {
+		final var input = "a = 1; bc = 23 ;\n d = 4;";
+		final var parser = newBnfParser().addGrammar(RECORDS).build();
+
+		assertEquals(parser.parse(input).toString(), parser.parseChunked(input, "<R>", afterLineBreak()).toString());
+	}
+
+	@Test
+	public void chunkedBuildsSameTree() throws IOException {
+		final var input = new StringBuilder();
+		for (int i = 0; i < 10_000; i++) input.append("key = ").append(i).append(";\n");
+		final var parser = newBnfParser().addGrammar(RECORDS).build();
+
+		final var expected = records(parser.parse(new StringReader(input.toString())));
+		final var chunked = records(parser.parseChunked(input.toString(), "<R>", afterLineBreak()));
+		assertEquals(expected.size(), chunked.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).toString(), chunked.get(i).toString());
+			assertEquals(expected.get(i).getStart(), chunked.get(i).getStart());
+		}
+	}
+
+	@Test
+	public void parseRecordsGivesEveryRecord() {
+		final var input = "key = 1234567890;\n".repeat(10_000);
+		final var parser = newBnfParser().addGrammar(RECORDS).build();
+
+		final var records = parser.parseRecords(input, "<R>", afterLineBreak(), ForkJoinPool.commonPool()).toList();
+		assertEquals(10_000, records.size());
+		assertEquals("key = 1234567890;", records.get(9_999).getText().toString());
+	}
+
+	@Test(expected = ParsingFailed.class)
+	public void unsafeSplitFails() {
+		final var input = "key = 1234567890;\n".repeat(10_000);
+		final RecordSplitter insideRecord = (text, offset) -> text.charAt(offset) == '=';
+
+		newBnfParser().addGrammar(RECORDS).build().parseChunked(input, "<R>", insideRecord);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void startRuleMustBeRecordList() {
+		newBnfParser().addGrammar("<S> := ( <S> ) | x").build().parseChunked("((x))", "<S>", afterLineBreak());
+	}
+
+	private static List<Node> records(Node list) {
+		final var records = new ArrayList<Node>();
+		while (list != null) {
+			records.add(list.child(0));
+			list = list.childCount() == 2 ? list.child(1) : null;
+		}
+		return records;
+	}
+
+}
@@ -0,0 +1,89 @@
+package unittests;
+
+import bullwinkle.BnfParser;
+import bullwinkle.nodes.CompactTree;
+import bullwinkle.util.NodePath;
+import org.junit.Test;
+
+import static bullwinkle.BnfParserBuilder.newBnfParser;
+import static org.junit.Assert.*;
+
+public class CompactTreeTest {
+
+	private static final BnfParser PARSER = newBnfParser().addGrammar("""
+		<S> := <R> <S> | <R>
+		<R> := <key> = <value> ;
+		<key> := ^([a-z]+)
+		<value> := ^[0-9]+
+		""").build();
+
+	@Test
+	public void compactTreeShowsSameNodes() {
+		final var input = "ab = 1; c = 23;";
+		final var tree = PARSER.parse(input);
+		final var compact = PARSER.parseCompact(input);
+
+		assertEquals(tree.toString(), compact.root().toString());
+		assertEquals(tree.getSize(), compact.size());
+		assertEquals(tree.getSize(), compact.root().getSize());
+		assertEquals(8, compact.node(1).getSize());
+	}
+
+	@Test
+	public void compactTreeLinksNodes() {
+		final var compact = PARSER.parseCompact("ab = 1; c = 23;");
+
+		assertEquals(-1, compact.parent(0));
+		assertEquals(1, compact.firstChild(0));
+		assertEquals(0, compact.parent(1));
+		assertEquals("<R>", compact.value(1));
+		assertEquals("<S>", compact.token(compact.nextSibling(1)));
+		assertEquals(8, compact.start(compact.nextSibling(1)));
+		assertEquals(15, compact.end(0));
+	}
+
+	@Test
+	public void compactTreeKeepsOnlyMatchedNodes() {
+		// The first alternatives fail after matching part of the input, their nodes are undone
+		final var parser = newBnfParser().addGrammar("""
+			<S> := <P> x | <P> y | <P> <P>
+			<P> := ( <S> ) | a | b
+			""").build();
+		final var input = "( ( a b ) y ) ( b x )";
+
+		final var compact = parser.parseCompact(input);
+		final var expected = CompactTree.of(parser.parse(input));
+		assertEquals(expected.root().toString(), compact.root().toString());
+		assertEquals(expected.size(), compact.size());
+		for (int i = 0; i < compact.size(); i++) {
+			assertEquals(expected.start(i), compact.start(i));
+			assertEquals(expected.end(i), compact.end(i));
+		}
+	}
+
+	@Test
+	public void viewKeepsItsChildren() {
+		final var root = PARSER.parseCompact("ab = 1; c = 23;").root();
+		final var record = root.child(0);
+
+		assertSame(record, root.child(0));
+		assertEquals(4, record.childCount());
+		for (int i = record.childCount() - 1; i >= 0; i--) {
+			assertSame(record.getChildren().get(i), record.child(i));
+		}
+		assertThrows(IndexOutOfBoundsException.class, () -> record.child(4));
+	}
+
+	@Test
+	public void nodePathWorksOnCompactTree() {
+		final var compact = CompactTree.of(PARSER.parse("ab = 1; c = 23;"));
+
+		assertEquals("23", NodePath.getPathFirst(compact.root(), "<S>.<S>.<R>.<value>").getText().toString());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void compactTreeCantChange() {
+		PARSER.parseCompact("ab = 1;").root().setToken("x");
+	}
+
+}
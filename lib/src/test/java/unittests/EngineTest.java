@@ -0,0 +1,181 @@
+package unittests;
+
+import bullwinkle.analysis.LlTable;
+import bullwinkle.engine.EarleyParser;
+import bullwinkle.engine.PredictiveParser;
+import bullwinkle.error.ParsingFailed;
+import org.junit.Test;
+
+import static bullwinkle.BnfParserBuilder.newBnfParser;
+import static bullwinkle.engine.EngineType.EARLEY;
+import static org.junit.Assert.*;
+
+public class EngineTest {
+
+	private static final String LL1_GRAMMAR = """
+		<S> := ( <L> ) | a
+		<L> := <S> <R> | ε
+		<R> := , <S> <R> | ε
+		""";
+
+	@Test
+	public void compileLl1Grammar() {
+		final var parser = newBnfParser().addGrammar(LL1_GRAMMAR).compile();
+
+		assertTrue(parser.getEngine() instanceof PredictiveParser);
+	}
+
+	@Test
+	public void predictiveParserBuildsSameTree() {
+		final var input = "( a , ( a ) , ( ) )";
+
+		final var expected = newBnfParser().addGrammar(LL1_GRAMMAR).build().parse(input).toString();
+		final var actual = newBnfParser().addGrammar(LL1_GRAMMAR).compile().parse(input).toString();
+
+		assertEquals(expected, actual);
+	}
+
+	@Test(expected = ParsingFailed.class)
+	public void predictiveParserRejectsInvalidInput() {
+		newBnfParser().addGrammar(LL1_GRAMMAR).compile().parse("( a , )");
+	}
+
+	@Test(expected = ParsingFailed.class)
+	public void predictiveParserRejectsRemainingInput() {
+		newBnfParser().addGrammar(LL1_GRAMMAR).compile().parse("( a ) a");
+	}
+
+	@Test
+	public void compileFallsBackOnConflicts() {
+		final var builder = newBnfParser().addGrammar("<S> := a b | a c | <S> x");
+		final var parser = builder.compile();
+
+		assertNull(parser.getEngine());
+		assertEquals(3, parser.parse("a c").getSize());
+
+		final var table = LlTable.build(parser.getStartRule(), parser.getAnalysis(), false);
+		assertFalse(table.isLl1());
+		assertEquals(3, table.getConflicts().size());
+	}
+
+	@Test
+	public void compileKeepsOrderedChoice() {
+		// The empty alternative of <L> always wins, so "a z" is not accepted
+		final var grammar = "<S> := <L> z\n<L> := ε | a <L>";
+		final var parser = newBnfParser().addGrammar(grammar).compile();
+
+		assertNull(parser.getEngine());
+		assertEquals(newBnfParser().addGrammar(grammar).build().parse("z").toString(), parser.parse("z").toString());
+		assertThrows(ParsingFailed.class, () -> newBnfParser().addGrammar(grammar).build().parse("a z"));
+		assertThrows(ParsingFailed.class, () -> parser.parse("a z"));
+	}
+
+	@Test
+	public void compileKeepsEmptyRulesFailing() {
+		// <A> only matches the empty string through <B>, so it fails on "x"
+		final var grammar = """
+			<S> := <A> x
+			<A> := <B>
+			<B> := b | ε
+			""";
+		final var parser = newBnfParser().addGrammar(grammar).compile();
+
+		assertNull(parser.getEngine());
+		assertEquals(newBnfParser().addGrammar(grammar).build().parse("b x").toString(), parser.parse("b x").toString());
+		assertThrows(ParsingFailed.class, () -> newBnfParser().addGrammar(grammar).build().parse("x"));
+		assertThrows(ParsingFailed.class, () -> parser.parse("x"));
+	}
+
+	@Test
+	public void earleyParsesLeftRecursion() {
+		final var parser = newBnfParser().addGrammar("<S> := <S> a | b").engine(EARLEY).build();
+
+		assertTrue(parser.getEngine() instanceof EarleyParser);
+		final var tree = parser.parse("b a a");
+		assertEquals(6, tree.getSize());
+		assertEquals("<S>", tree.getChildren().get(0).getToken());
+	}
+
+	@Test
+	public void earleyParserBuildsSameTree() {
+		final var input = "( a , ( a ) , ( ) )";
+
+		final var expected = newBnfParser().addGrammar(LL1_GRAMMAR).build().parse(input).toString();
+		final var actual = newBnfParser().addGrammar(LL1_GRAMMAR).engine(EARLEY).build().parse(input).toString();
+
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void earleyParsesAmbiguousGrammar() {
+		final var parser = newBnfParser().addGrammar("""
+			<E> := <E> + <E> | <E> * <E> | <N>
+			<N> := ^[0-9]+
+			""").engine(EARLEY).build();
+
+		assertEquals(18, parser.parse("1 + 2 * 3 + 4").getSize());
+	}
+
+	@Test
+	public void earleyParsesDeepLeftRecursion() {
+		final int depth = 20_000;
+		var node = newBnfParser().addGrammar("<S> := <S> a | a").engine(EARLEY).build().parse("a ".repeat(depth));
+
+		int levels = 1;
+		while (node.getChildren().size() == 2) {
+			node = node.getChildren().get(0);
+			levels++;
+		}
+		assertEquals(depth, levels);
+	}
+
+	@Test
+	public void earleyParsesDeepRightRecursion() {
+		final int depth = 20_000;
+		var node = newBnfParser().addGrammar("<S> := a <S> | a").engine(EARLEY).build().parse("a ".repeat(depth));
+
+		int levels = 1;
+		while (node.getChildren().size() == 2) {
+			node = node.getChildren().get(1);
+			levels++;
+		}
+		assertEquals(depth, levels);
+	}
+
+	@Test(timeout = 10_000)
+	public void earleyParsesLongLeftRecursiveExpression() {
+		final int terms = 5_000;
+		final var input = new StringBuilder("0");
+		for (int i = 1; i < terms; i++) input.append(" + ").append(i);
+		final var parser = newBnfParser().addGrammar("""
+			<E> := <E> + <T> | <T>
+			<T> := ^[0-9]+
+			""").engine(EARLEY).build();
+
+		var node = parser.parse(input.toString());
+		assertEquals(4 * terms - 1, node.getSize());
+		int levels = 1;
+		while (node.getChildren().size() == 3) {
+			node = node.getChildren().get(0);
+			levels++;
+		}
+		assertEquals(terms, levels);
+	}
+
+	@Test
+	public void earleyIsNotOrderedChoice() {
+		final var grammar = """
+			<S> := a <T>
+			<T> := b | b c
+			""";
+
+		assertEquals(5, newBnfParser().addGrammar(grammar).engine(EARLEY).build().parse("a b c").getSize());
+		assertThrows(ParsingFailed.class, () -> newBnfParser().addGrammar(grammar).build().parse("a b c"));
+	}
+
+	@Test(expected = ParsingFailed.class)
+	public void earleyParserRejectsInvalidInput() {
+		newBnfParser().addGrammar("<S> := <S> a | b").engine(EARLEY).build().parse("b a b");
+	}
+
+}
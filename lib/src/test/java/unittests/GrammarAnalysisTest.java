@@ -0,0 +1,69 @@
+package unittests;
+
+import bullwinkle.BnfParser;
+import org.junit.Test;
+
+import static bullwinkle.BnfParserBuilder.newBnfParser;
+import static org.junit.Assert.*;
+
+public class GrammarAnalysisTest {
+
+	private static final String GRAMMAR = """
+		<S> := <A> b | c <S>
+		<A> := x | <B> y
+		<B> := <N> | ε
+		<N> := ^[0-9]+
+		""";
+
+	@Test
+	public void firstSetOfRule() {
+		final var parser = newBnfParser().addGrammar(GRAMMAR).build();
+		final var first = parser.getAnalysis().first(parser.getRule("<S>"));
+
+		assertTrue(first.contains('x'));
+		assertTrue(first.contains('c'));
+		assertTrue("A regex can start with anything", first.contains('7'));
+		assertFalse(first.isNullable());
+	}
+
+	@Test
+	public void nullableRule() {
+		final var parser = newBnfParser().addGrammar(GRAMMAR).build();
+		final var analysis = parser.getAnalysis();
+
+		assertTrue(analysis.isNullable(parser.getRule("<B>")));
+		assertFalse(analysis.isNullable(parser.getRule("<A>")));
+	}
+
+	@Test
+	public void firstSetOfAlternatives() {
+		final var parser = newBnfParser().addGrammar("<S> := a <S> | b | ε").build();
+		final var alternatives = parser.getAnalysis().alternatives(parser.getRule("<S>"));
+
+		assertTrue(alternatives[0].contains('a'));
+		assertFalse(alternatives[0].contains('b'));
+		assertFalse(alternatives[1].admitsEnd());
+		assertTrue(alternatives[2].admitsEnd());
+	}
+
+	@Test
+	public void leftRecursionIsNeverSkipped() {
+		final var parser = newBnfParser().addGrammar("<S> := <S> a | b").build();
+		final var alternatives = parser.getAnalysis().alternatives(parser.getRule("<S>"));
+
+		assertTrue(alternatives[0].isLeftRecursive());
+		assertTrue(alternatives[0].admits('z'));
+		assertFalse(alternatives[1].admits('z'));
+	}
+
+	@Test
+	public void predictionKeepsParseTree() {
+		final var input = "c c 12 y b";
+		final BnfParser predictive = newBnfParser().addGrammar(GRAMMAR).build();
+		final BnfParser exhaustive = newBnfParser().predictive(false).addGrammar(GRAMMAR).build();
+
+		assertNull(exhaustive.getAnalysis());
+		assertEquals(exhaustive.parse(input).toString(), predictive.parse(input).toString());
+	}
+
+}
@@ -3,15 +3,20 @@ package unittests;
 import static bullwinkle.BnfParserBuilder.newBnfParser;
 import static java.lang.String.format;
 import static java.util.logging.Level.ALL;
+import static java.util.logging.Level.OFF;
 import static org.junit.Assert.*;
 import static unittests.util.Functions.newTestBnfParser;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import bullwinkle.error.InvalidRule;
 import bullwinkle.error.MaximumRecursionReached;
 import bullwinkle.error.ParsingFailed;
 import bullwinkle.BnfParser;
+import bullwinkle.BnfRule;
+import bullwinkle.ParseTracer;
+import bullwinkle.util.ParseInput;
 import unittests.util.DummyLogger;
 import org.junit.Test;
 
@@ -343,6 +348,35 @@ public class GrammarTests {
 			.startRule("<S>").build().parse("foo 0 d c");
 	}
 	
+	@Test
+	public void parseGrammarMemoized() throws IOException {
+		final var expression = "SELECT a FROM (SELECT b FROM t)";
+
+		final int actualSize = newTestBnfParser("1.bnf").memoize(true)
+			.startRule("<S>").build().parse(expression).getSize();
+
+		assertEquals("Node tree size incorrect", 19, actualSize);
+	}
+
+	@Test
+	public void parseGrammarMemoizedSmallTable() throws IOException {
+		final var expression = "(THE TUPLES OF FILE \"a\") WHERE (a) = (0)";
+
+		final var expected = newTestBnfParser("11.bnf").startRule("<processor>")
+			.build().parse(expression).toString();
+		final var actual = newTestBnfParser("11.bnf").startRule("<processor>")
+			.memoize(true).memoTableSize(2)
+			.build().parse(expression).toString();
+
+		assertEquals("Memoized parse tree differs", expected, actual);
+	}
+
+	@Test(expected = ParsingFailed.class)
+	public void parseGrammarMemoizedError() throws IOException {
+		newTestBnfParser("10.bnf").memoize(true)
+			.startRule("<S>").build().parse("a WHERE");
+	}
+
 	@Test
 	public void parseGrammarDebug() throws IOException {
 		final var logger = new DummyLogger();
@@ -355,4 +389,37 @@ public class GrammarTests {
 		}
 	}
 
+	@Test
+	public void parseGrammarTracer() throws IOException {
+		final var entered = new AtomicInteger();
+		final var succeeded = new AtomicInteger();
+		newTestBnfParser("10.bnf").startRule("<S>")
+			.tracer(new ParseTracer() {
+				@Override
+				public void enterRule(BnfRule rule, ParseInput input, int offset, int level) {
+					entered.incrementAndGet();
+				}
+				@Override
+				public void succeed(BnfRule rule, ParseInput input, int start, int end, int level) {
+					succeeded.incrementAndGet();
+				}
+			})
+			.build().parse("a WHERE b");
+
+		assertTrue("Tracer did not see any rule", entered.get() > 0);
+		assertTrue("Tracer did not see the start rule succeed", succeeded.get() > 0);
+	}
+
+	@Test
+	public void parseGrammarLoggerOff() throws IOException {
+		final var logger = new DummyLogger();
+		logger.setLevel(OFF);
+		try {
+			newTestBnfParser("10.bnf").startRule("<S>")
+				.logger(logger).build().parse("a WHERE");
+		} catch (ParsingFailed e) {
+			assertFalse(logger.hasLogged());
+		}
+	}
+
 }
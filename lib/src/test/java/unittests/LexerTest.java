@@ -0,0 +1,59 @@
+package unittests;
+
+import bullwinkle.BnfRule;
+import bullwinkle.error.ParsingFailed;
+import bullwinkle.error.UnknownToken;
+import bullwinkle.lexer.Lexer;
+import org.junit.Test;
+
+import java.util.List;
+
+import static bullwinkle.BnfParserBuilder.newBnfParser;
+import static org.junit.Assert.*;
+
+public class LexerTest {
+
+	private static final String GRAMMAR = """
+		<S> := <kw> <id> = <num>
+		<kw> := if | int
+		<id> := ^[a-z]+
+		<num> := ^[0-9]+
+		""";
+
+	@Test
+	public void longestLexemeWins() {
+		final var lexer = Lexer.of(List.of(
+			BnfRule.parseRule("<S> := if <id>", false),
+			BnfRule.parseRule("<id> := ^[a-z]+", false)));
+
+		final var lexemes = lexer.tokenize("if iffy");
+
+		assertEquals(2, lexemes.size());
+		assertEquals(0, lexemes.kind(0));
+		assertEquals(1, lexemes.kind(1));
+		assertEquals(3, lexemes.start(1));
+		assertEquals(7, lexemes.end(1));
+	}
+
+	@Test
+	public void parserWithLexerBuildsSameTree() {
+		final var input = "int x = 42";
+
+		final var expected = newBnfParser().addGrammar(GRAMMAR).build().parse(input).toString();
+		final var actual = newBnfParser().addGrammar(GRAMMAR).lexer(true).build().parse(input).toString();
+
+		assertEquals(expected, actual);
+	}
+
+	@Test(expected = ParsingFailed.class)
+	public void terminalMatchesWholeLexeme() {
+		// Without a lexer "int" would match the start of "intx"
+		newBnfParser().addGrammar(GRAMMAR).lexer(true).build().parse("intx = 42");
+	}
+
+	@Test(expected = UnknownToken.class)
+	public void unknownCharacterFails() {
+		newBnfParser().addGrammar(GRAMMAR).lexer(true).build().parse("int x = $");
+	}
+
+}
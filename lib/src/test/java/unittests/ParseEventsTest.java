@@ -0,0 +1,70 @@
+package unittests;
+
+import bullwinkle.BnfParser;
+import bullwinkle.ParseNodeVisitor;
+import bullwinkle.error.ParsingFailed;
+import bullwinkle.error.VisitException;
+import bullwinkle.nodes.Node;
+import org.junit.Test;
+
+import static bullwinkle.BnfParserBuilder.newBnfParser;
+import static org.junit.Assert.*;
+
+public class ParseEventsTest {
+
+	private static final class Events implements ParseNodeVisitor {
+		private final StringBuilder out = new StringBuilder();
+
+		@Override
+		public void visit(final Node node) {
+			out.append(node.getToken()).append(',');
+		}
+		@Override
+		public void pop() {
+			out.append("pop,");
+		}
+	}
+
+	private static String events(final BnfParser parser, final String input) throws VisitException {
+		final var events = new Events();
+		parser.parse(input, events);
+		return events.out.toString();
+	}
+
+	private static String treeEvents(final BnfParser parser, final String input) throws VisitException {
+		final var events = new Events();
+		parser.parse(input).prefixAccept(events);
+		return events.out.toString();
+	}
+
+	@Test
+	public void eventsFollowPrefixOrder() throws VisitException {
+		final var parser = newBnfParser().addGrammar("<S> := ( <L> ) | x\n<L> := <S> , <L> | <S>").build();
+		final var input = "( x , ( x , x ) , x )";
+
+		assertEquals(treeEvents(parser, input), events(parser, input));
+	}
+
+	@Test
+	public void recordsAreSentOneByOne() throws VisitException {
+		final var parser = newBnfParser().addGrammar("""
+			<S> := <R> <S> | <R>
+			<R> := <key> = <value> ;
+			<key> := ^[a-z]+
+			<value> := ^[0-9]+
+			""").memoTableSize(100).build();
+		final var input = "ab = 1; c = 23;";
+
+		assertEquals(treeEvents(parser, input), events(parser, input));
+	}
+
+	@Test
+	public void eventsAreSentBeforeParsingEnds() {
+		final var parser = newBnfParser().addGrammar("<S> := SELECT <c> FROM <t>\n<c> := ^[a-z]+\n<t> := ^[a-z]+").build();
+		final var events = new Events();
+
+		assertThrows(ParsingFailed.class, () -> parser.parse("SELECT a FROM 1", events));
+		assertTrue(events.out.toString().startsWith("<S>,SELECT,pop,<c>,a,pop,pop,FROM,pop,"));
+	}
+
+}
@@ -0,0 +1,91 @@
+package unittests;
+
+import bullwinkle.BnfParser;
+import bullwinkle.ParseTracer;
+import bullwinkle.engine.EarleyParser;
+import bullwinkle.engine.EngineType;
+import bullwinkle.engine.PredictiveParser;
+import bullwinkle.tokens.NonTerminalToken;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static bullwinkle.BnfParserBuilder.newBnfParser;
+import static org.junit.Assert.*;
+
+public class ParserFileTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private static final String GRAMMAR = """
+		<S> := <cmd> <S> | <cmd>
+		<cmd> := <verb> <number> ; | <verb> ;
+		<verb> := go | stop | turn | wait | jump
+		<number> := ^([0-9]+)
+		""";
+
+	@Test
+	public void loadedParserParsesTheSame() throws IOException {
+		final var parser = newBnfParser().addGrammar(GRAMMAR).memoize(true).build();
+		final var loaded = reload(parser);
+
+		assertEquals(parser.toString(), loaded.toString());
+		final var input = "go 12; stop; turn 3;";
+		assertEquals(parser.parse(input).toString(), loaded.parse(input).toString());
+	}
+
+	@Test
+	public void loadedParserKeepsItsAnalysis() throws IOException {
+		final var parser = newBnfParser().addGrammar(GRAMMAR).build();
+		final var loaded = reload(parser);
+
+		for (final var name : new String[] { "<S>", "<cmd>", "<verb>", "<number>" }) {
+			assertEquals(parser.getAnalysis().first(parser.getRule(name)).toString(),
+				loaded.getAnalysis().first(loaded.getRule(name)).toString());
+		}
+		// The tokens are linked to the rules they refer to
+		final var token = (NonTerminalToken) loaded.getStartRule().getAlternativeTokens()[1][0];
+		assertSame(loaded.getRule("<cmd>"), token.getRule());
+	}
+
+	@Test
+	public void loadedParserKeepsItsEngine() throws IOException {
+		final var predictive = reload(newBnfParser().addGrammar("<S> := ( <S> ) | x").compile());
+		assertTrue(predictive.getEngine() instanceof PredictiveParser);
+		assertEquals("<S>", predictive.parse("((x))").getToken());
+
+		final var earley = reload(newBnfParser().addGrammar("<E> := <E> + x | x").engine(EngineType.EARLEY).build());
+		assertTrue(earley.getEngine() instanceof EarleyParser);
+		assertEquals("<E>", earley.parse("x + x").getToken());
+
+		final var lexed = reload(newBnfParser().addGrammar(GRAMMAR).lexer(true).build());
+		assertNotNull(lexed.getLexer());
+		assertEquals("<S>", lexed.parse("jump 1;").getToken());
+	}
+
+	@Test
+	public void saveToFile() throws IOException {
+		final var file = folder.newFile().toPath();
+		final var parser = newBnfParser().addGrammar(GRAMMAR).build();
+		parser.save(file);
+
+		assertEquals(parser.parse("wait;").toString(), BnfParser.load(file).parse("wait;").toString());
+	}
+
+	@Test(expected = IOException.class)
+	public void otherFilesAreRejected() throws IOException {
+		BnfParser.load(new ByteArrayInputStream("<S> := x".getBytes()), ParseTracer.NONE);
+	}
+
+	private static BnfParser reload(final BnfParser parser) throws IOException {
+		final var out = new ByteArrayOutputStream();
+		parser.save(out);
+		return BnfParser.load(new ByteArrayInputStream(out.toByteArray()), ParseTracer.NONE);
+	}
+
+}
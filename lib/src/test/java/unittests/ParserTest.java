@@ -4,10 +4,28 @@ import static bullwinkle.BnfParserBuilder.newBnfParser;
 import static org.junit.Assert.*;
 import static unittests.util.Functions.assertSize;
 
+import bullwinkle.BnfRule;
+import bullwinkle.ParseResult;
 import bullwinkle.error.InvalidRule;
+import bullwinkle.error.MissingRule;
+import bullwinkle.error.ParsingFailed;
+import bullwinkle.tokens.LiteralSetTerminalToken;
+import bullwinkle.tokens.NonTerminalToken;
+import bullwinkle.tokens.RegexTerminalToken;
+import bullwinkle.tokens.StringTerminalToken;
+import bullwinkle.tokens.TerminalToken;
+import bullwinkle.tokens.TokenString;
+import bullwinkle.util.ParseInput;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.StringReader;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 public class ParserTest {
 
@@ -41,4 +59,234 @@ public class ParserTest {
 		assertEquals("b", alternatives.get(1).toString());
 	}
 
+	@Test(expected = MissingRule.class)
+	public void strictRulesReportMissingRuleAtBuild() {
+		newBnfParser().strictRules(true)
+			.addGrammar("<S> := <a> | b")
+			.build();
+	}
+
+	@Test
+	public void nonTerminalsResolvedAtBuild() {
+		final var parser = newBnfParser()
+			.addGrammar("<S> := <a> | b\n<a> := c")
+			.build();
+
+		final var token = (NonTerminalToken) parser.getRule("<S>").getAlternatives().get(0).get(0);
+		assertSame(parser.getRule("<a>"), token.getRule());
+	}
+
+	@Test
+	public void deepInputDoesNotUseCallStack() {
+		final int depth = 50_000;
+		final var parser = newBnfParser()
+			.addGrammar("<S> := a <S> | a")
+			.maxRecursionSteps(depth)
+			.build();
+
+		var node = parser.parse("a ".repeat(depth));
+		int levels = 1;
+		while (node.getChildren().size() == 2) {
+			node = node.getChildren().get(1);
+			levels++;
+		}
+		assertEquals(depth, levels);
+	}
+
+	@Test
+	public void literalSetPrefersFirstLiteral() {
+		final var token = new LiteralSetTerminalToken(List.of("do", "double", "d"));
+
+		assertEquals(2, token.match("double x", 0));
+		assertEquals(1, token.match("dx", 0));
+		assertEquals(0, token.match("x", 0));
+		assertEquals("do | double | d", token.getName());
+	}
+
+	@Test
+	public void literalAlternativesAreMerged() {
+		final var grammar = "<S> := <k> <k>\n<k> := if | else | while | for | int";
+		final var merged = newBnfParser().addGrammar(grammar).build();
+		final var plain = newBnfParser().addGrammar(grammar).literalSets(false).build();
+
+		final var alternatives = merged.getRule("<k>").getAlternatives();
+		assertSize(alternatives, 1);
+		assertTrue(alternatives.get(0).get(0) instanceof LiteralSetTerminalToken);
+		assertEquals(plain.parse("while int").toString(), merged.parse("while int").toString());
+	}
+
+	@Test
+	public void anchoredRegexMatchesAtOffset() {
+		final var searching = new RegexTerminalToken("[0-9]+");
+		final var anchored = new RegexTerminalToken("([a-z]+)([0-9]+)", true);
+
+		assertEquals(4, searching.match("ab 12", 1));
+		assertEquals(-1, new RegexTerminalToken("[0-9]+", true).match("ab 12", 1));
+		assertEquals(4, anchored.match("x ab12 cd34", 2));
+		assertEquals(List.of("ab", "12"), anchored.getCaptureBlocks("x ab12 cd34", 2, 6));
+		assertEquals(List.of("cd", "34"), anchored.getCaptureBlocks("x ab12 cd34", 7, 11));
+	}
+
+	@Test
+	public void pooledThreadReleasesInput() throws Exception {
+		final var parser = newBnfParser().addGrammar("<S> := <n> <S> | <n>\n<n> := ^([0-9]+)").build();
+		final var executor = Executors.newSingleThreadExecutor();
+		try {
+			// The input and its tree are only referenced by the task
+			final var input = executor.submit(() -> {
+				final var text = new String("12 34 56");
+				assertEquals("<S>", parser.parse(text).getToken());
+				return new WeakReference<>(text);
+			}).get();
+			for (int i = 0; i < 50 && input.get() != null; i++) {
+				System.gc();
+				Thread.sleep(10);
+			}
+			assertNull(input.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void trailingWhitespaceIsNotInput() {
+		final var anchored = newBnfParser().addGrammar("<S> := ^abc$").build();
+		assertEquals("<S>", anchored.parse("abc  ").getToken());
+		assertEquals("<S>", anchored.parse("abc\n\n").getToken());
+
+		final var words = newBnfParser().addGrammar("<S> := ^[a-z ]+").build().parse("ab cd  ");
+		assertEquals("ab cd", words.getChildren().get(0).getText().toString());
+
+		assertTrue(new ParseInput("abc ").match(new StringTerminalToken("s"), 0) <= 0);
+	}
+
+	@Test
+	public void readerDropsTrailingWhitespace() throws IOException {
+		assertEquals("<S>", newBnfParser().addGrammar("<S> := ^abc$").build().parse(new StringReader("abc \n")).getToken());
+	}
+
+	@Test
+	public void terminalTextStaysInInput() {
+		final var input = "while  int";
+		final var tree = newBnfParser().addGrammar("<S> := <k> <k>\n<k> := while | int").build().parse(input);
+
+		final var terminal = tree.getChildren().get(1).getChildren().get(0);
+		assertEquals("int", terminal.getToken());
+		assertEquals("int", terminal.getText().toString());
+		assertEquals(7, terminal.getStart());
+		assertEquals(input, tree.getText().toString());
+	}
+
+	@Test
+	public void childrenAreReadWithoutCopy() {
+		final var tree = newBnfParser().addGrammar("<S> := <k> <k>\n<k> := while | int").build().parse("while int");
+
+		assertEquals(2, tree.childCount());
+		assertSame(tree.child(1), tree.children().get(1));
+		assertSame(tree.children().get(0), tree.getChildren().get(0));
+		assertThrows(UnsupportedOperationException.class, () -> tree.children().clear());
+	}
+
+	@Test
+	public void builtRulesCantChange() {
+		final var builder = newBnfParser().addGrammar("<S> := <a> | b\n<a> := c");
+		final var parser = builder.build();
+
+		assertThrows(IllegalStateException.class, () -> parser.getRule("<S>").addAlternative(0, new TokenString(new TerminalToken("d"))));
+		// The builder still owns its own rules
+		final var other = builder.addCaseToRule("<S>", "d").build();
+		assertSize(parser.getRule("<S>").getAlternatives(), 2);
+		assertSize(other.getRule("<S>").getAlternatives(), 3);
+	}
+
+	@Test
+	public void builtAlternativesCantChange() {
+		final var parser = newBnfParser().addGrammar("<S> := <a> | b\n<a> := c").build();
+		final var alternative = parser.getRule("<S>").getAlternatives().get(0);
+		final var token = (NonTerminalToken) alternative.get(0);
+
+		assertThrows(IllegalStateException.class, alternative::clear);
+		assertThrows(IllegalStateException.class, () -> alternative.add(new TerminalToken("d")));
+		assertThrows(IllegalStateException.class, () -> alternative.removeIf(t -> true));
+		assertThrows(IllegalStateException.class, () -> alternative.setTryLast(true));
+		assertThrows(IllegalStateException.class, () -> token.resolve(parser.getRule("<S>")));
+		parser.getRule("<S>").getAlternativeTokens()[1][0] = new TerminalToken("d");
+		assertEquals("<S>", parser.parse("b").getToken());
+	}
+
+	@Test
+	public void sourceRulesCantChangeBuiltParser() {
+		final var rule = BnfRule.parseRule("<S> := a <n>", false);
+		final var number = BnfRule.parseRule("<n> := ^[0-9]+", false);
+		final var parser = newBnfParser().addRule(rule).addRule(number).build();
+		final var alternative = rule.getAlternatives().get(0);
+
+		assertThrows(IllegalStateException.class, () -> alternative.get(0).setName("b"));
+		assertThrows(IllegalStateException.class, () -> number.getAlternatives().get(0).get(0).setName("^[a-z]+"));
+		alternative.clear();
+		alternative.add(new TerminalToken("b"));
+		assertEquals("<S>", parser.parse("a 12").getToken());
+		assertThrows(ParsingFailed.class, () -> parser.parse("b"));
+	}
+
+	@Test
+	public void parserIsSharedByThreads() throws Exception {
+		final var parser = newBnfParser()
+			.addGrammar("<S> := <R> <S> | <R>\n<R> := <key> = <value> ;\n<key> := ^[a-z]+\n<value> := ^([0-9]+)")
+			.memoize(true)
+			.build();
+		final var tasks = new ArrayList<Callable<String>>();
+		final var expected = new ArrayList<String>();
+		for (int i = 0; i < 64; i++) {
+			final var input = "k = " + i + "; v = " + (i * 7) + ";";
+			tasks.add(() -> parser.parse(input).toString());
+			expected.add(parser.parse(input).toString());
+		}
+
+		final var pool = Executors.newFixedThreadPool(8);
+		try {
+			final var results = pool.invokeAll(tasks);
+			for (int i = 0; i < results.size(); i++) assertEquals(expected.get(i), results.get(i).get());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void parallelAlternativesKeepTheirOrder() throws ParsingFailed {
+		final var grammar = "<S> := <A> | <B> | <C>\n<A> := a b\n<B> := ^[a-z ]+\n<C> := a <X>\n<X> := b | c";
+		final var sequential = newBnfParser().addGrammar(grammar).build();
+		final var pool = new ForkJoinPool(3);
+		try {
+			final var parallel = newBnfParser().addGrammar(grammar).parallelAlternatives(pool).build();
+			for (final var input : List.of("a b", "a c", "abc")) {
+				assertEquals(sequential.parse(input).toString(), parallel.parse(input).toString());
+			}
+			assertThrows(ParsingFailed.class, () -> parallel.parse("a 1"));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void parseAllKeepsInputOrder() {
+		final var parser = newBnfParser().addGrammar("<S> := ( <S> ) | x").build();
+		final var inputs = List.of("x", "((x))", "(x", "(((x)))");
+
+		final var pool = Executors.newFixedThreadPool(3);
+		final List<ParseResult> results;
+		try {
+			results = parser.parseAll(inputs, pool);
+		} finally {
+			pool.shutdown();
+		}
+		assertSize(results, 4);
+		for (final int i : new int[] {0, 1, 3}) {
+			assertTrue(results.get(i).isSuccess());
+			assertEquals(parser.parse(inputs.get(i)).toString(), results.get(i).tree().toString());
+		}
+		assertNull(results.get(2).tree());
+		assertTrue(results.get(2).error() instanceof ParsingFailed);
+	}
+
 }
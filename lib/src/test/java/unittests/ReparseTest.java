@@ -0,0 +1,106 @@
+package unittests;
+
+import bullwinkle.TextEdit;
+import bullwinkle.error.ParsingFailed;
+import bullwinkle.nodes.Node;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static bullwinkle.BnfParserBuilder.newBnfParser;
+import static org.junit.Assert.*;
+
+public class ReparseTest {
+
+	private static final String RECORDS = """
+		<S> := <R> <S> | <R>
+		<R> := <key> = <value> ;
+		<key> := ^[a-z]+
+		<value> := ^[0-9]+
+		""";
+
+	@Test
+	public void nodesKnowTheirOffsets() {
+		final var tree = newBnfParser().addGrammar(RECORDS).build().parse("a = 1;  bc = 23 ;");
+
+		assertEquals(0, tree.getStart());
+		assertEquals(17, tree.getEnd());
+		final var second = tree.getChildren().get(1).getChildren().get(0);
+		assertEquals(8, second.getStart());
+		assertEquals(17, second.getEnd());
+		assertEquals(13, second.getChildren().get(2).getStart());
+	}
+
+	@Test
+	public void reparseBuildsSameTree() {
+		final var parser = newBnfParser().addGrammar(RECORDS).build();
+		final var text = "a = 1; bc = 23 ;\n d = 4;";
+		final var edit = TextEdit.replace(text, 12, 13, "789");
+
+		final var tree = parser.reparse(parser.parse(text), edit);
+		assertEquals(parser.parse(edit.text()).toString(), tree.toString());
+		assertEquals(edit.text().length(), tree.getEnd());
+		assertEquals(20, tree.getChildren().get(1).getChildren().get(1).getStart());
+	}
+
+	@Test
+	public void reparseReusesUntouchedNodes() {
+		final var parser = newBnfParser().addGrammar(RECORDS).build();
+		final var text = "a = 1; bc = 23; d = 4;";
+		final var tree = parser.parse(text);
+		final var first = tree.getChildren().get(0);
+
+		final var reparsed = parser.reparse(tree, TextEdit.replace(text, 12, 14, "5"));
+		assertSame(first, reparsed.getChildren().get(0));
+	}
+
+	@Test
+	public void reparseGrowsToEnclosingRule() {
+		final var parser = newBnfParser().addGrammar(RECORDS).build();
+		final var text = "a = 1; bc = 23; d = 4;";
+		// The first record now ends earlier, so the rules around it are parsed again
+		final var edit = TextEdit.replace(text, 4, 5, "1; e = 2");
+
+		assertEquals(parser.parse(edit.text()).toString(), parser.reparse(parser.parse(text), edit).toString());
+	}
+
+	@Test
+	public void reparseMovesSharedNodesOnce() {
+		// The memo table shares the node of <o> matching nothing between both of its places
+		final var parser = newBnfParser().addGrammar("""
+			<S> := <R> <S> | <R>
+			<R> := <k> <o> <o> ;
+			<k> := ^[a-z]+
+			<o> := ! | ε
+			""").memoize(true).build();
+		final var text = "ab ; cd ;";
+		final var edit = TextEdit.replace(text, 1, 2, "bcd");
+
+		final var tree = parser.reparse(parser.parse(text), edit);
+		assertEquals(spans(parser.parse(edit.text())), spans(tree));
+	}
+
+	@Test(expected = ParsingFailed.class)
+	public void reparseInvalidEdit() {
+		final var parser = newBnfParser().addGrammar(RECORDS).build();
+		final var text = "a = 1; bc = 23;";
+
+		parser.reparse(parser.parse(text), TextEdit.replace(text, 2, 3, ""));
+	}
+
+	// The token and offsets of every node, in prefix order
+	private static List<String> spans(final Node node) {
+		final var spans = new ArrayList<String>();
+		final var todo = new ArrayDeque<Node>();
+		todo.push(node);
+		while (!todo.isEmpty()) {
+			final var next = todo.pop();
+			spans.add(next.getToken() + "@" + next.getStart() + "-" + next.getEnd());
+			for (int i = next.childCount() - 1; i >= 0; i--) todo.push(next.child(i));
+		}
+		return spans;
+	}
+
+}
@@ -0,0 +1,150 @@
+package unittests;
+
+import bullwinkle.nodes.Node;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.stream.Stream;
+
+import static bullwinkle.BnfParserBuilder.newBnfParser;
+import static org.junit.Assert.*;
+
+public class StreamingTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private static final String RECORDS = """
+		<S> := <R> <S> | <R>
+		<R> := <key> = <value> ;
+		<key> := ^[a-z]+
+		<value> := ^[0-9]+
+		""";
+
+	@Test
+	public void readerBuildsSameTree() throws IOException {
+		final var input = "a = 1; bc = 23 ;\n d = 4;";
+		final var parser = newBnfParser().addGrammar(RECORDS).build();
+
+		assertEquals(parser.parse(input).toString(), parser.parse(new StringReader(input)).toString());
+	}
+
+	@Test
+	public void readerParsesManyRecords() throws IOException {
+		final int count = 20_000;
+		final var input = "key = 1234567890;\n".repeat(count);
+
+		Node node = newBnfParser().addGrammar(RECORDS).build().parse(new StringReader(input));
+		int records = 1;
+		while (node.getChildren().size() == 2) {
+			node = node.getChildren().get(1);
+			records++;
+		}
+		assertEquals(count, records);
+	}
+
+	@Test
+	public void regexMatchesAcrossChunks() throws IOException {
+		final var value = "7".repeat(200_000);
+		final var tree = newBnfParser().addGrammar(RECORDS).build().parse(new StringReader("x = " + value + ";"));
+
+		assertEquals(value, tree.getChildren().get(0).getChildren().get(2).getChildren().get(0).getToken());
+	}
+
+	@Test
+	public void recordsAreHandedOutOneAtATime() throws IOException {
+		final int count = 200_000;
+		final var parser = newBnfParser().addGrammar(RECORDS).build();
+
+		// The consumer only keeps the last record, so the records never pile up
+		final var last = new Node[1];
+		final var records = new int[1];
+		parser.parseRecords(new RepeatingReader("key = 1234567890;\n", count), record -> {
+			last[0] = record;
+			records[0]++;
+		});
+		assertEquals(count, records[0]);
+		assertEquals("<R>", last[0].getToken());
+		assertEquals("1234567890", last[0].getChildren().get(2).getChildren().get(0).getToken());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void recordsNeedListOfRecords() throws IOException {
+		newBnfParser().addGrammar("<S> := ( <S> ) | x").build().parseRecords(new StringReader("((x))"), record -> {});
+	}
+
+	@Test
+	public void otherGrammarsReadEverything() throws IOException {
+		final var parser = newBnfParser().addGrammar("<S> := ( <S> ) | x").build();
+
+		assertEquals(parser.parse("((x))").toString(), parser.parse(new StringReader("((x))")).toString());
+	}
+
+	@Test
+	public void mappedAsciiFile() throws IOException {
+		final var input = "a = 1; bc = 23 ;\n d = 4;";
+		final var file = folder.newFile().toPath();
+		Files.writeString(file, input);
+		final var parser = newBnfParser().addGrammar(RECORDS).build();
+
+		assertEquals(parser.parse(input).toString(), parser.parse(file).toString());
+	}
+
+	@Test
+	public void mappedUtf8File() throws IOException {
+		final var input = "( é , ( é ) )";
+		final var file = folder.newFile().toPath();
+		Files.writeString(file, input);
+		final var parser = newBnfParser().addGrammar("<S> := ( <L> ) | é\n<L> := <S> , <L> | <S>").build();
+
+		assertEquals(parser.parse(input).toString(), parser.parse(file).toString());
+	}
+
+	@Test
+	public void parseAllFiles() throws IOException {
+		final var first = folder.newFile().toPath();
+		final var second = folder.newFile().toPath();
+		Files.writeString(first, "a = 1;");
+		Files.writeString(second, "b = 2; c = 3;");
+		final var parser = newBnfParser().addGrammar(RECORDS).build();
+
+		final var results = parser.parseAll(Stream.of(first, second, folder.getRoot().toPath().resolve("missing")));
+		assertEquals(parser.parse("a = 1;").toString(), results.get(0).tree().toString());
+		assertEquals(parser.parse("b = 2; c = 3;").toString(), results.get(1).tree().toString());
+		assertTrue(results.get(2).error() instanceof IOException);
+	}
+
+	// A long input that is never held in memory as a whole
+	private static final class RepeatingReader extends Reader {
+		private final String text;
+		private int remaining, offset;
+
+		RepeatingReader(final String text, final int count) {
+			this.text = text;
+			this.remaining = count;
+		}
+
+		@Override
+		public int read(final char[] buffer, final int start, final int length) {
+			if (remaining == 0) return -1;
+			final int n = Math.min(length, text.length() - offset);
+			text.getChars(offset, offset + n, buffer, start);
+			offset += n;
+			if (offset == text.length()) {
+				offset = 0;
+				remaining--;
+			}
+			return n;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+}
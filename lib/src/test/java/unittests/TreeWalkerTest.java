@@ -0,0 +1,72 @@
+package unittests;
+
+import bullwinkle.ParseNodeVisitor;
+import bullwinkle.error.VisitException;
+import bullwinkle.nodes.Node;
+import bullwinkle.util.TreeWalker;
+import org.junit.Test;
+
+import static bullwinkle.BnfParserBuilder.newBnfParser;
+import static org.junit.Assert.*;
+
+public class TreeWalkerTest {
+
+	private static final class Events implements ParseNodeVisitor {
+		private final StringBuilder out = new StringBuilder();
+
+		@Override
+		public void visit(final Node node) {
+			out.append(node.getToken()).append(',');
+		}
+		@Override
+		public void pop() {
+			out.append("pop,");
+		}
+	}
+
+	private static Node tree() {
+		return new Node("foo")
+			.addChild(new Node("bar")
+				.addChild(new Node("0"))
+				.addChild(new Node("1")));
+	}
+
+	@Test
+	public void walkerPausesAndResumes() throws VisitException {
+		final var events = new Events();
+		final var walker = TreeWalker.prefix(tree());
+
+		assertTrue(walker.walk(events, 3));
+		assertEquals("foo,bar,0,", events.out.toString());
+		walker.walk(events);
+		assertFalse(walker.hasNext());
+		assertEquals("foo,bar,0,pop,1,pop,pop,pop,", events.out.toString());
+	}
+
+	@Test
+	public void postfixWalkerVisitsChildrenFirst() throws VisitException {
+		final var events = new Events();
+		TreeWalker.postfix(tree()).walk(events);
+
+		assertEquals("0,pop,1,pop,bar,pop,foo,pop,", events.out.toString());
+	}
+
+	@Test
+	public void deepTreeDoesNotUseCallStack() throws VisitException {
+		final int depth = 100_000;
+		final var tree = newBnfParser()
+			.addGrammar("<S> := a <S> | a")
+			.maxRecursionSteps(depth)
+			.build().parse("a ".repeat(depth));
+
+		final int[] visits = {0};
+		tree.prefixAccept(new ParseNodeVisitor() {
+			public void visit(final Node node) {
+				visits[0]++;
+			}
+			public void pop() {}
+		});
+		assertEquals(2 * depth, visits[0]);
+	}
+
+}